@@ -1,20 +1,27 @@
 package com.delta2.colours;
 
-import java.awt.image.BufferedImage;
+import static java.nio.file.StandardOpenOption.CREATE;
+import static java.nio.file.StandardOpenOption.TRUNCATE_EXISTING;
+import static java.nio.file.StandardOpenOption.WRITE;
+
+import java.io.Closeable;
 import java.io.File;
 import java.io.IOException;
+import java.nio.channels.FileChannel;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Iterator;
 import java.util.List;
 
-import javax.imageio.stream.FileImageOutputStream;
-import javax.imageio.stream.ImageOutputStream;
-
 import com.delta2.colours.filters.animation.AnimationFilter;
-import com.delta2.thirdparty.GIFSequenceWriter;
+import com.delta2.colours.gif.GIFEncoder;
+import com.delta2.colours.gif.Palette;
+import com.delta2.colours.gif.Quantiser;
+
 
+public final class Animation implements Closeable {
 
-public final class Animation {
+	private static final int PALETTE_FRAMES = 8;
 
 	private List<DImage> images;
 	private int delay;
@@ -34,18 +41,50 @@ public final class Animation {
 		images.addAll(imgs);
 	}
 	
+	/**
+	 * Constructs an Animation which keeps its frames in a FrameStore, so it may be longer than would fit on the heap.
+	 * The store is closed along with the animation.
+	 */
+	public Animation(FrameStore store){
+		images = store;
+		delay = 100/4;
+	}
+	
 	public void setAlpha(double alpha){
 		for(DImage img : images)
 			img.setAlpha(alpha);
 	}
 	
+	/**
+	 * Runs a filter over every frame of this animation. A windowed filter only holds the frames of its window at once,
+	 * any other filter is given an array of every frame.
+	 */
 	public void applyFilter(AnimationFilter filter){
 		
+		if(filter.isWindowed()){
+			Iterator<DImage> it = new FilterWindow(images.iterator(), filter);
+			
+			for(int i=0; it.hasNext(); i++)
+				images.set(i, it.next());
+			
+			return;
+		}
+		
 		DImage[] imgs = images.toArray(new DImage[0]);
 		
 		for(int i=0; i<images.size(); i++)
 			filter.applyFilter(imgs, i);
 		
+		//The filter may have replaced frames, and a FrameStore only keeps a few of them on the heap
+		for(int i=0; i<imgs.length; i++)
+			images.set(i, imgs[i]);
+	}
+	
+	/**
+	 * @return A stream over the frames of this animation, which filters and blends without changing this animation.
+	 */
+	public AnimationStream stream(){
+		return new AnimationStream(images.size(), i -> new DImage(images.get(i))).setDelay(delay);
 	}
 	
 	public void ensureLength(int len){
@@ -74,15 +113,33 @@ public final class Animation {
 		if(images==null || images.size()==0)
 			throw new RuntimeException("Empty animation");
 		
-		ImageOutputStream outStream = new FileImageOutputStream(output);
-		GIFSequenceWriter gifWriter = new GIFSequenceWriter(outStream, BufferedImage.TYPE_INT_RGB, delay, true);
+		DImage first = images.get(0);
+
+		//One palette for the whole animation, built from a few frames spread over it
+		int[][] samples = new int[Math.min(images.size(), PALETTE_FRAMES)][];
+		for(int i=0; i<samples.length; i++)
+			samples[i] = images.get(i*images.size()/samples.length).toPackedRGB();
+
+		Palette palette = Quantiser.OCTREE.quantise(Palette.MAX_COLOURS-1, samples);
+
+		try(GIFEncoder gif = new GIFEncoder(FileChannel.open(output.toPath(), CREATE, TRUNCATE_EXISTING, WRITE), first.getWidth(), first.getHeight(), GIFEncoder.LOOP_FOREVER, palette)){
+			gif.setExecutor(TileExecutor.getPool(), 2*TileExecutor.getPool().getParallelism());
 
-		for(int i=0; i<images.size(); i++){
-			DImage img = images.get(i);
-			gifWriter.writeToSequence(img.toBufferedImage());
+			for(DImage img : images)
+				gif.writeFrame(img, delay);
 		}
 
 		System.out.println();
-		gifWriter.close();
+	}
+	
+	/**
+	 * Releases the frames of this animation, deleting the file of its FrameStore if it has one.
+	 */
+	@Override
+	public void close() throws IOException{
+		if(images instanceof FrameStore)
+			((FrameStore) images).close();
+		
+		images = new ArrayList<DImage>();
 	}
 }
@@ -0,0 +1,232 @@
+package com.delta2.colours;
+
+import static java.nio.file.StandardOpenOption.CREATE;
+import static java.nio.file.StandardOpenOption.TRUNCATE_EXISTING;
+import static java.nio.file.StandardOpenOption.WRITE;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.function.Function;
+import java.util.function.IntFunction;
+
+import com.delta2.colours.filters.animation.AnimationFilter;
+import com.delta2.colours.gif.GIFEncoder;
+
+/**
+ * An AnimationStream is an animation whose frames are made by a supplier when they are needed, instead of being kept in memory.
+ * Filters and blends are only recorded, and are run as the frames flow through the stream when it is iterated or exported,
+ * so only the frames in the windows of its filters are ever held at once, no matter how long the animation is.
+ * Every filter must therefore be windowed (see AnimationFilter.isWindowed()).
+ * 
+ * A stream can be iterated any number of times, making every frame anew each time.
+ * @author ssodelta
+ *
+ */
+public final class AnimationStream implements Iterable<DImage> {
+
+	private final int frames;
+	private final IntFunction<DImage> source;
+	private final int ahead;
+
+	private final List<Function<Iterator<DImage>, Iterator<DImage>>> stages = new ArrayList<Function<Iterator<DImage>, Iterator<DImage>>>();
+
+	private int delay = 100/4;
+
+	/**
+	 * Constructs a new AnimationStream, making every frame on the thread iterating the stream.
+	 * @param frames The number of frames.
+	 * @param source Makes frame i, for i in [0; frames).
+	 */
+	public AnimationStream(int frames, IntFunction<DImage> source){
+		this(frames, source, 0);
+	}
+
+	/**
+	 * Constructs a new AnimationStream which makes up to 'ahead' frames concurrently on the shared pool,
+	 * ahead of the frame being iterated. The source must then be safe to call from several threads at once.
+	 * @param frames The number of frames.
+	 * @param source Makes frame i, for i in [0; frames).
+	 * @param ahead The number of frames made in advance.
+	 */
+	public AnimationStream(int frames, IntFunction<DImage> source, int ahead){
+		if(frames<0)
+			throw new IllegalArgumentException("Error, the number of frames cannot be negative.");
+		if(ahead<0)
+			throw new IllegalArgumentException("Error, the number of frames made in advance cannot be negative.");
+
+		this.frames = frames;
+		this.source = source;
+		this.ahead  = ahead;
+	}
+
+	public int size(){
+		return frames;
+	}
+
+	/**
+	 * Sets the time every frame is shown for when exported.
+	 * @param delay The delay between frames in milliseconds.
+	 */
+	public AnimationStream setDelay(int delay){
+		this.delay = delay;
+		return this;
+	}
+
+	public AnimationStream setAlpha(double alpha){
+		stages.add(it -> map(it, img -> {
+			img.setAlpha(alpha);
+			return img;
+		}));
+
+		return this;
+	}
+
+	/**
+	 * Runs a windowed filter over every frame of this stream.
+	 * @throws IllegalArgumentException If the filter needs the whole animation.
+	 */
+	public AnimationStream applyFilter(AnimationFilter filter){
+		if(!filter.isWindowed())
+			throw new IllegalArgumentException("Error, the filter "+filter+" needs the whole animation and cannot be streamed.");
+
+		stages.add(it -> new FilterWindow(it, filter));
+		return this;
+	}
+
+	/**
+	 * Blends every frame of another stream onto the corresponding frame of this stream.
+	 * If the other stream is shorter, the remaining frames are left as they are.
+	 */
+	public AnimationStream blend(AnimationStream other, BlendMode mode){
+		stages.add(it -> {
+			Iterator<DImage> o = other.iterator();
+
+			return map(it, img -> o.hasNext() ? img.blend(o.next(), mode) : img);
+		});
+
+		return this;
+	}
+
+	@Override
+	public Iterator<DImage> iterator(){
+		Iterator<DImage> it = ahead>0 ? new Prefetch() : new Iterator<DImage>(){
+			private int i = 0;
+
+			@Override
+			public boolean hasNext(){
+				return i < frames;
+			}
+
+			@Override
+			public DImage next(){
+				if(i >= frames)
+					throw new NoSuchElementException();
+
+				return source.apply(i++);
+			}
+		};
+
+		for(Function<Iterator<DImage>, Iterator<DImage>> stage : stages)
+			it = stage.apply(it);
+
+		return it;
+	}
+
+	/**
+	 * Collects every frame of this stream into an Animation, which may be backed by a FrameStore.
+	 */
+	public Animation toAnimation(FrameStore store){
+		Animation a = new Animation(store);
+
+		for(DImage img : this)
+			a.addImage(img);
+
+		return a;
+	}
+
+	/**
+	 * Writes this stream into a .gif file, frame by frame.
+	 * As the frames are not known in advance, every frame gets a palette of its own.
+	 */
+	public void export(File output) throws IOException{
+		Iterator<DImage> it = iterator();
+
+		if(!it.hasNext())
+			throw new RuntimeException("Empty animation");
+
+		DImage first = it.next();
+
+		try(GIFEncoder gif = new GIFEncoder(FileChannel.open(output.toPath(), CREATE, TRUNCATE_EXISTING, WRITE), first.getWidth(), first.getHeight(), GIFEncoder.LOOP_FOREVER)){
+			gif.setExecutor(TileExecutor.getPool(), 2*TileExecutor.getPool().getParallelism());
+
+			gif.writeFrame(first, delay);
+			first = null;
+
+			while(it.hasNext())
+				gif.writeFrame(it.next(), delay);
+		}
+	}
+
+	private static Iterator<DImage> map(Iterator<DImage> it, Function<DImage, DImage> f){
+		return new Iterator<DImage>(){
+			@Override
+			public boolean hasNext(){
+				return it.hasNext();
+			}
+
+			@Override
+			public DImage next(){
+				return f.apply(it.next());
+			}
+		};
+	}
+
+	/**
+	 * Makes the frames of the source on the shared pool, keeping up to 'ahead' of them in flight.
+	 */
+	private final class Prefetch implements Iterator<DImage> {
+		private final Deque<Future<DImage>> pending = new ArrayDeque<Future<DImage>>();
+		private int submitted = 0;
+
+		@Override
+		public boolean hasNext(){
+			return !pending.isEmpty() || submitted < frames;
+		}
+
+		@Override
+		public DImage next(){
+			while(pending.size() < Math.max(1, ahead) && submitted < frames){
+				int i = submitted++;
+				pending.add(TileExecutor.getPool().submit(() -> source.apply(i)));
+			}
+
+			if(pending.isEmpty())
+				throw new NoSuchElementException();
+
+			try {
+				return pending.poll().get();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new RuntimeException(e);
+			} catch (ExecutionException e) {
+				Throwable cause = e.getCause();
+
+				if(cause instanceof RuntimeException)
+					throw (RuntimeException) cause;
+				if(cause instanceof Error)
+					throw (Error) cause;
+
+				throw new RuntimeException(cause);
+			}
+		}
+	}
+}
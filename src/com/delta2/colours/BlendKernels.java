@@ -0,0 +1,119 @@
+package com.delta2.colours;
+
+/**
+ * Bulk bodies for the predefined blend modes. Each mode gets its own loop over a run of samples,
+ * with the alpha premultiplication of both inputs and the final unpremultiplication folded in,
+ * so the choice of mode is made once per run instead of calling a lambda per sample.
+ * The loops of the arithmetic modes are branch-free, so the JIT compiler can unroll and auto-vectorise them.
+ * The light modes and OVERLAY still pick one of two expressions per sample, as they must match BlendMode exactly.
+ * Every body evaluates exactly the same double expression as the corresponding lambda in BlendMode.
+ * @author ssodelta
+ *
+ */
+final class BlendKernels {
+
+	private BlendKernels(){}
+
+	/**
+	 * Computes dst[i] = mode.combine(dst[i]*a1, src[i]*a2) * scale for 'count' samples.
+	 * @return false if 'mode' is not one of the predefined modes, in which case nothing is written.
+	 */
+	static boolean combine(BlendMode mode, float[] dst, int d, float[] src, int s, int count, double a1, double a2, double scale){
+
+		if(mode == BlendMode.NORMAL){
+			for(int i=0; i<count; i++){
+				double b = src[s+i]*a2;
+				dst[d+i] = (float) (b * scale);
+			}
+		} else if(mode == BlendMode.MULTIPLY){
+			for(int i=0; i<count; i++){
+				double a = dst[d+i]*a1, b = src[s+i]*a2;
+				dst[d+i] = (float) ((a*b) * scale);
+			}
+		} else if(mode == BlendMode.SCREEN){
+			for(int i=0; i<count; i++){
+				double a = dst[d+i]*a1, b = src[s+i]*a2;
+				dst[d+i] = (float) ((1-(1-a)*(1-b)) * scale);
+			}
+		} else if(mode == BlendMode.DARKEN){
+			for(int i=0; i<count; i++){
+				double a = dst[d+i]*a1, b = src[s+i]*a2;
+				dst[d+i] = (float) (Math.min(a, b) * scale);
+			}
+		} else if(mode == BlendMode.COLOR_BURN){
+			for(int i=0; i<count; i++){
+				double a = dst[d+i]*a1, b = src[s+i]*a2;
+				dst[d+i] = (float) ((1 - (1-a) / b) * scale);
+			}
+		} else if(mode == BlendMode.LINEAR_BURN){
+			for(int i=0; i<count; i++){
+				double a = dst[d+i]*a1, b = src[s+i]*a2;
+				dst[d+i] = (float) ((a+b-1) * scale);
+			}
+		} else if(mode == BlendMode.LIGHTEN){
+			for(int i=0; i<count; i++){
+				double a = dst[d+i]*a1, b = src[s+i]*a2;
+				dst[d+i] = (float) (Math.max(a, b) * scale);
+			}
+		} else if(mode == BlendMode.COLOR_DODGE){
+			for(int i=0; i<count; i++){
+				double a = dst[d+i]*a1, b = src[s+i]*a2;
+				dst[d+i] = (float) ((a / (1-b)) * scale);
+			}
+		} else if(mode == BlendMode.LINEAR_DODGE){
+			for(int i=0; i<count; i++){
+				double a = dst[d+i]*a1, b = src[s+i]*a2;
+				dst[d+i] = (float) ((a+b) * scale);
+			}
+		} else if(mode == BlendMode.XOR){
+			for(int i=0; i<count; i++){
+				double a = dst[d+i]*a1, b = src[s+i]*a2;
+				dst[d+i] = (float) ((((int)(a*255) ^ (int)(b*255)) / 255.0) * scale);
+			}
+		} else if(mode == BlendMode.OVERLAY){
+			for(int i=0; i<count; i++){
+				double a = dst[d+i]*a1, b = src[s+i]*a2;
+				dst[d+i] = (float) ((a>0.5 ? 1-(1-2*(a-0.5))*(1-b) : 2*a*b) * scale);
+			}
+		} else if(mode == BlendMode.SOFT_LIGHT){
+			for(int i=0; i<count; i++){
+				double a = dst[d+i]*a1, b = src[s+i]*a2;
+				dst[d+i] = (float) ((b>0.5 ? 1-(1-a)*(1-(b-0.5)) : a*(b+0.5)) * scale);
+			}
+		} else if(mode == BlendMode.HARD_LIGHT){
+			for(int i=0; i<count; i++){
+				double a = dst[d+i]*a1, b = src[s+i]*a2;
+				dst[d+i] = (float) ((b>0.5 ? 1-(1-a)*(1-2*(b-0.5)) : 2*a*b) * scale);
+			}
+		} else if(mode == BlendMode.VIVID_LIGHT){
+			for(int i=0; i<count; i++){
+				double a = dst[d+i]*a1, b = src[s+i]*a2;
+				dst[d+i] = (float) ((b>0.5 ? 1-(1-a)/(2*(b-0.5)) : a / (1-2*b)) * scale);
+			}
+		} else if(mode == BlendMode.LINEAR_LIGHT){
+			for(int i=0; i<count; i++){
+				double a = dst[d+i]*a1, b = src[s+i]*a2;
+				dst[d+i] = (float) ((b>0.5 ? a + 2*(b-0.5) : a / (1-2*b)) * scale);
+			}
+		} else if(mode == BlendMode.PIN_LIGHT){
+			for(int i=0; i<count; i++){
+				double a = dst[d+i]*a1, b = src[s+i]*a2;
+				dst[d+i] = (float) ((b>0.5 ? Math.max(a, 2*(b-0.5)) : Math.min(a, 2*b)) * scale);
+			}
+		} else if(mode == BlendMode.DIFFERENCE){
+			for(int i=0; i<count; i++){
+				double a = dst[d+i]*a1, b = src[s+i]*a2;
+				dst[d+i] = (float) (Math.abs(a-b) * scale);
+			}
+		} else if(mode == BlendMode.EXCLUSION){
+			for(int i=0; i<count; i++){
+				double a = dst[d+i]*a1, b = src[s+i]*a2;
+				dst[d+i] = (float) ((0.5 - 2*(a-0.5)*(b-0.5)) * scale);
+			}
+		} else {
+			return false;
+		}
+
+		return true;
+	}
+}
@@ -4,6 +4,24 @@ public interface BlendMode {
 
 	double combine(double a, double b);
 	
+	/**
+	 * Blends a run of samples in place, computing dst[i] = combine(dst[i]*alphaA, src[i]*alphaB) * scale,
+	 * i.e. with the premultiplication by alpha and the final unpremultiplication folded into the same pass.
+	 * The predefined modes use a specialised loop, any other mode falls back to calling combine() per sample.
+	 * @param dst The samples of the bottom layer, which receive the result.
+	 * @param dstOff The index of the first sample in 'dst'.
+	 * @param src The samples of the top layer.
+	 * @param srcOff The index of the first sample in 'src'.
+	 * @param count The number of samples to blend.
+	 */
+	default void combine(float[] dst, int dstOff, float[] src, int srcOff, int count, double alphaA, double alphaB, double scale){
+		if(BlendKernels.combine(this, dst, dstOff, src, srcOff, count, alphaA, alphaB, scale))
+			return;
+		
+		for(int i=0; i<count; i++)
+			dst[dstOff+i] = (float) (combine(dst[dstOff+i]*alphaA, src[srcOff+i]*alphaB) * scale);
+	}
+	
 	
 	public static final BlendMode NORMAL       = (a,b) -> b,
 					              MULTIPLY     = (a,b) -> a*b,
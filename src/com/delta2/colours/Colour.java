@@ -102,6 +102,8 @@ public final class Colour {
 	}
 	
 	public Colour convert(ColourSpace to){
+		if(to == colourSpace)
+			return this;
 		
 		this.data = to.fromRGB(colourSpace.toRGB(data));
 		this.colourSpace = to;
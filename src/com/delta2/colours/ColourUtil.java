@@ -19,9 +19,20 @@ public final class ColourUtil {
 	 * @return
 	 */
 	public static double getHue(double r, double g, double b){
-		double M = ColourUtil.max(r,g,b),
-			   m = ColourUtil.min(r,g,b),
-			   C = M - m,
+		return getHue(r, g, b, ColourUtil.max(r,g,b), ColourUtil.min(r,g,b));
+	}
+	
+	/**
+	 * Calculates the hue component based on R,G,B when the maximum and minimum of the three are already known.
+	 * @param r
+	 * @param g
+	 * @param b
+	 * @param M max(r,g,b)
+	 * @param m min(r,g,b)
+	 * @return
+	 */
+	public static double getHue(double r, double g, double b, double M, double m){
+		double C = M - m,
 			   hh = -1; //Error value
 		
 		if(C==0){
@@ -142,7 +153,7 @@ public final class ColourUtil {
 	 * @return
 	 */
 	public static final double max(double... vals){
-		double max = Double.MIN_VALUE;
+		double max = -Double.MAX_VALUE;
 		
 		for(double v : vals)
 			if(v > max)
@@ -2,113 +2,240 @@ package com.delta2.colours;
 
 import java.awt.image.BufferedImage;
 
+import com.delta2.colours.colourspace.ColourSpace;
 import com.delta2.colours.filters.image.DImageFilter;
+import com.delta2.colours.filters.image.FilterChain;
 
+/**
+ * A DImage is an image backed by a packed DRaster, i.e. one float plane per colour channel.
+ * The whole image is in a single colour space (RGB when it is constructed), and it is only converted in bulk,
+ * either explicitly through convertTo() or when a filter needs a colour space the image is not in.
+ * So a pipeline of filters working in HSV converts the image once, and does not go back to RGB until toBufferedImage().
+ * @author ssodelta
+ *
+ */
 public final class DImage {
 
-	private final Colour[][] data;
+	private static final int CHANNELS = 3,
+							 PACK_STRIP_HEIGHT = 16;
+
+	private DRaster raster;
 	final int width;
 	final int height;
-	
+
 	private double alpha = 1.0;
-	
+
 	public DImage(DImage img){
-		
-		this.width  = img.width;
-		this.height = img.height;
-		
-		data = new Colour[width][height];
-		
-		for(int x=0; x<width;  x++)
-		for(int y=0; y<height; y++)
-			getData()[x][y] = new Colour(img.getData()[x][y]);
+		this(new DRaster(img.raster));
+		this.alpha = img.alpha;
 	}
-	
+
+	public DImage(DRaster raster){
+		this.raster = raster;
+
+		this.width  = raster.width;
+		this.height = raster.height;
+	}
+
 	public DImage(Colour[][] raster){
-		this.data = raster;
-		
-		this.width  = raster.length;
-		this.height = raster[0].length;
+		this(raster.length, raster[0].length);
+
+		for(int y=0; y<height; y++)
+		for(int x=0; x<width;  x++)
+			this.raster.setColour(x, y, raster[x][y]);
 	}
-	
-	public DImage(int width, int height){
-		
-		this.width  = width;
-		this.height = height;
-		
-		data = new Colour[width][height];
 
+	public DImage(int width, int height){
+		this(new DRaster(width, height, CHANNELS));
 	}
-	
+
 	public DImage(BufferedImage img){
-		width  = img.getWidth();
-		height = img.getHeight();
-		
-		data = new Colour[width][height];
-		
-		for(int x=0; x<width;  x++)
-		for(int y=0; y<height; y++)
-			getData()[x][y] = new Colour(img.getRGB(x, y));
-		
+		this(img.getWidth(), img.getHeight());
+
+		int[] rgb = img.getRGB(0, 0, width, height, null, 0, width);
+
+		float[] r = raster.getPlane(0),
+				g = raster.getPlane(1),
+				b = raster.getPlane(2);
+
+		for(int y=0; y<height; y++){
+			int row = y*raster.stride;
+
+			for(int x=0; x<width; x++){
+				int p = rgb[y*width + x];
+
+				r[row+x] = ((p >> 16) & 0xFF) / 255f;
+				g[row+x] = ((p >>  8) & 0xFF) / 255f;
+				b[row+x] = ( p        & 0xFF) / 255f;
+			}
+		}
 	}
-	
+
 	public double getAlpha(){
 		return alpha;
 	}
-	
+
+	public ColourSpace getColourSpace(){
+		return raster.getColourSpace();
+	}
+
 	//---Mutators
-	
+
 	public void setAlpha(double a){
 		this.alpha = a;
 	}
-	
+
+	/**
+	 * Converts every pixel of this image into another colour space.
+	 * References previously obtained through getRaster() remain valid, but their planes may be replaced.
+	 */
+	public DImage convertTo(ColourSpace cs){
+		raster.convertTo(cs);
+		return this;
+	}
+
+	/**
+	 * Applies a filter to every pixel of this image. The filter reads from the current raster and writes into a
+	 * new raster, which then replaces the current raster, so references previously obtained through getRaster() go stale.
+	 * The old raster is not kept, so a filtered image holds no more memory than any other.
+	 * If the filter does not support the colour space of the image, the image is converted to the filter's colour space first.
+	 */
 	public DImage applyFilter(DImageFilter filter){
 		
-		for(int x=0; x<width;  x++)
-		for(int y=0; y<height; y++)
-			getData()[x][y] = filter.filter(x, y, getData());
+		if(filter.getColourSpace()!=null && !filter.supports(raster.getColourSpace()))
+			raster.convertTo(filter.getColourSpace());
+		
+		DRaster back = new DRaster(width, height, raster.getColourSpace());
+		
+		filter.apply(raster, back);
+		
+		raster = back;
 		
 		return this;
 	}
 	
+	/**
+	 * Applies several filters in order, running consecutive point filters in a single pass (see FilterChain).
+	 */
+	public DImage applyFilters(DImageFilter... filters){
+		return applyFilter(new FilterChain(filters));
+	}
+	
+	/**
+	 * Blends another image onto this one, channel by channel in the colour space of this image.
+	 * The other image is left untouched, even if it has to be converted.
+	 */
 	public DImage blend(DImage other, BlendMode mode){
 		if(this.width!=other.width || this.height!=other.height)
 			throw new IllegalArgumentException("cannot blend two images of different dimensions.");
 
+		DRaster src = other.raster;
+
+		if(src.getColourSpace() != raster.getColourSpace())
+			src = new DRaster(src).convertTo(raster.getColourSpace());
+
 		double a1 = this.getAlpha(), a2 = other.getAlpha();
 		double newAlpha = a1 + a2 - a1*a2;
-		
-		for(int x=0; x<width;  x++)
-		for(int y=0; y<height; y++){
-			Colour col = this.getData()[x][y],
-				   bl  = other.getData()[x][y];
-			
-			col.scale(a1);
-			bl.scale(a2);
-			
-			col.blend(bl, mode);
-			
-			col.scale(1.0 / newAlpha);
-			
+		double inv = 1.0 / newAlpha;
+
+		for(int c=0; c<raster.getChannels(); c++){
+			float[] dst = raster.getPlane(c),
+					s   = src.getPlane(c);
+
+			if(raster.stride==width && src.stride==width){
+				mode.combine(dst, 0, s, 0, width*height, a1, a2, inv);
+				continue;
+			}
+
+			for(int y=0; y<height; y++)
+				mode.combine(dst, y*raster.stride, s, y*src.stride, width, a1, a2, inv);
 		}
+
 		return this;
 	}
-	
+
 	//---Accessors
-	
+
+	/**
+	 * Converts this image to an RGB BufferedImage.
+	 */
 	public BufferedImage toBufferedImage(){
 		BufferedImage img = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
-		
-		for(int x=0; x<width;  x++)
-		for(int y=0; y<height; y++)
-			img.setRGB(x, y, getData()[x][y].to24bits());
-		
+
+		img.setRGB(0, 0, width, height, toPackedRGB(), 0, width);
+
 		return img;
 	}
 
+	/**
+	 * Packs every pixel of this image into an int as 0xRRGGBB with 8 bits per channel, row by row.
+	 * The image itself stays in its colour space, the pixels are converted to RGB a row at a time while they are packed.
+	 */
+	public int[] toPackedRGB(){
+		int[] rgb = new int[width*height];
+
+		ColourSpace cs = raster.getColourSpace();
+		float[][] planes = raster.planes;
+
+		TileExecutor.forEachStrip(width, height, PACK_STRIP_HEIGHT, (x0,y0,x1,y1) -> {
+			float[][] row = cs==ColourSpace.RGB ? planes : new float[3][width];
+
+			for(int y=y0; y<y1; y++){
+				int in = y*raster.stride;
+
+				if(cs != ColourSpace.RGB){
+					cs.toRGB(planes, in, row, 0, width);
+					in = 0;
+				}
+
+				float[] r = row[0],
+						g = row[1],
+						b = row[2];
+
+				for(int x=0; x<width; x++)
+					rgb[y*width + x] = to8bits(r[in+x]) << 16
+									 | to8bits(g[in+x]) <<  8
+									 | to8bits(b[in+x]);
+			}
+		});
+
+		return rgb;
+	}
+
+	private static int to8bits(float f){
+		return ColourUtil.to8bits(ColourUtil.bound(f, 0, 1));
+	}
+
+	/**
+	 * Returns the packed storage of this image. Changes to the raster are reflected in the image until the next call to applyFilter().
+	 */
+	public DRaster getRaster(){
+		return raster;
+	}
+
+	public int getWidth(){
+		return width;
+	}
+
+	public int getHeight(){
+		return height;
+	}
+
+	/**
+	 * Compatibility view of this image as a 2-dimensional array of Colour objects in the colour space of the image.
+	 * This allocates a new Colour object for every pixel, and changes to the returned array are not reflected in the image,
+	 * so prefer getRaster() whenever possible.
+	 * @return A copy of the image indexed as [x][y].
+	 */
 	public Colour[][] getData() {
+		Colour[][] data = new Colour[width][height];
+
+		for(int x=0; x<width;  x++)
+		for(int y=0; y<height; y++)
+			data[x][y] = raster.getColour(x, y);
+
 		return data;
 	}
 
-	
+
 }
@@ -0,0 +1,217 @@
+package com.delta2.colours;
+
+import com.delta2.colours.colourspace.ColourSpace;
+
+/**
+ * A DRaster is a packed pixel buffer. Every colour channel is stored in its own contiguous float array (a plane),
+ * and the pixel at (x, y) is found at index y*stride + x in each of the planes.
+ * All pixels of a raster are in the same colour space, which is RGB unless the raster is converted.
+ * @author ssodelta
+ *
+ */
+public final class DRaster {
+
+	float[][] planes;
+	private ColourSpace colourSpace;
+
+	final int width;
+	final int height;
+	final int stride;
+
+	/**
+	 * Constructs a new, zeroed DRaster in the given colour space.
+	 * @param width The width of the raster in pixels.
+	 * @param height The height of the raster in pixels.
+	 * @param colourSpace The colour space of the pixels, which determines the number of channels.
+	 */
+	public DRaster(int width, int height, ColourSpace colourSpace){
+		this(width, height, colourSpace.getDimensions());
+		this.colourSpace = colourSpace;
+	}
+
+	/**
+	 * Constructs a new, black DRaster in RGB.
+	 * @param width The width of the raster in pixels.
+	 * @param height The height of the raster in pixels.
+	 * @param channels The number of colour channels per pixel.
+	 */
+	public DRaster(int width, int height, int channels){
+		if(width<1 || height<1 || channels<1)
+			throw new IllegalArgumentException("Error, width, height and channels must be positive integers.");
+
+		this.width  = width;
+		this.height = height;
+		this.stride = width;
+		this.colourSpace = ColourSpace.RGB;
+
+		planes = new float[channels][width*height];
+	}
+
+	/**
+	 * Constructs a deep copy of another DRaster.
+	 * @param other The raster to copy.
+	 */
+	public DRaster(DRaster other){
+		this.width  = other.width;
+		this.height = other.height;
+		this.stride = other.stride;
+		this.colourSpace = other.colourSpace;
+
+		planes = new float[other.planes.length][];
+
+		for(int c=0; c<planes.length; c++)
+			planes[c] = other.planes[c].clone();
+	}
+
+	//---Accessors
+
+	public int getWidth(){
+		return width;
+	}
+
+	public int getHeight(){
+		return height;
+	}
+
+	/**
+	 * @return The distance (in array elements) between two vertically adjacent pixels in a plane.
+	 */
+	public int getStride(){
+		return stride;
+	}
+
+	public int getChannels(){
+		return planes.length;
+	}
+
+	public ColourSpace getColourSpace(){
+		return colourSpace;
+	}
+
+	/**
+	 * Returns the backing array of a single channel. Changes to the array are reflected in the raster.
+	 * @param channel The channel index.
+	 * @return The plane of the given channel.
+	 */
+	public float[] getPlane(int channel){
+		return planes[channel];
+	}
+
+	public int index(int x, int y){
+		return y*stride + x;
+	}
+
+	public float get(int channel, int x, int y){
+		return planes[channel][y*stride + x];
+	}
+
+	/**
+	 * Copies every channel of the pixel at (x, y) into 'out'.
+	 */
+	public void getPixel(int x, int y, float[] out){
+		int i = y*stride + x;
+
+		for(int c=0; c<planes.length; c++)
+			out[c] = planes[c][i];
+	}
+
+	/**
+	 * Returns the pixel at (x, y) as a new Colour object in the colour space of this raster.
+	 */
+	public Colour getColour(int x, int y){
+		int i = y*stride + x;
+
+		double[] data = new double[planes.length];
+		for(int c=0; c<planes.length; c++)
+			data[c] = planes[c][i];
+
+		return new Colour(data, colourSpace);
+	}
+
+	//---Mutators
+
+	public void set(int channel, int x, int y, float value){
+		planes[channel][y*stride + x] = value;
+	}
+
+	/**
+	 * Copies every channel in 'in' into the pixel at (x, y).
+	 */
+	public void setPixel(int x, int y, float[] in){
+		int i = y*stride + x;
+
+		for(int c=0; c<planes.length; c++)
+			planes[c][i] = in[c];
+	}
+
+	/**
+	 * Writes a Colour object into the pixel at (x, y), converting it to the colour space of this raster first.
+	 * The Colour itself is left untouched.
+	 */
+	public void setColour(int x, int y, Colour col){
+		int i = y*stride + x;
+
+		double[] data = col.getData();
+
+		if(col.getColourSpace() != colourSpace)
+			data = colourSpace.fromRGB(col.getColourSpace().toRGB(data));
+
+		for(int c=0; c<planes.length; c++)
+			planes[c][i] = (float) data[c];
+	}
+
+	/**
+	 * Converts every pixel of this raster into another colour space in one bulk pass.
+	 * The planes are converted in place when both colour spaces have the same number of channels,
+	 * otherwise they are replaced, so arrays previously obtained through getPlane() go stale.
+	 * @param to The new colour space of this raster.
+	 * @return This raster.
+	 */
+	public DRaster convertTo(ColourSpace to){
+		if(to == colourSpace)
+			return this;
+
+		ColourSpace from = colourSpace;
+		float[][] src = planes,
+				  dst = to.getDimensions()==planes.length ? planes : new float[to.getDimensions()][planes[0].length];
+
+		TileExecutor.forEachStrip(width, height, CONVERSION_STRIP_HEIGHT, (x0,y0,x1,y1) ->
+			ColourSpace.convert(from, to, src, y0*stride, dst, y0*stride, (y1-y0)*stride)
+		);
+
+		this.planes = dst;
+		this.colourSpace = to;
+
+		return this;
+	}
+
+	/**
+	 * Changes the colour space the channels of this raster are interpreted in, without converting them.
+	 */
+	void setColourSpace(ColourSpace colourSpace){
+		if(colourSpace.getDimensions() != planes.length)
+			throw new IllegalArgumentException("cannot interpret a raster with "+planes.length+" channels in a colour space with "+colourSpace.getDimensions()+" channels.");
+
+		this.colourSpace = colourSpace;
+	}
+
+	/**
+	 * Copies every plane of 'src' into this raster, which takes on the colour space of 'src'. Both rasters must have the same dimensions.
+	 */
+	public void copyFrom(DRaster src){
+		if(!sameSize(src))
+			throw new IllegalArgumentException("cannot copy between two rasters of different dimensions.");
+
+		this.colourSpace = src.colourSpace;
+
+		for(int c=0; c<planes.length; c++)
+			System.arraycopy(src.planes[c], 0, planes[c], 0, planes[c].length);
+	}
+
+	public boolean sameSize(DRaster other){
+		return width==other.width && height==other.height && stride==other.stride && planes.length==other.planes.length;
+	}
+
+	private static final int CONVERSION_STRIP_HEIGHT = 16;
+
+}
@@ -0,0 +1,83 @@
+package com.delta2.colours;
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+import com.delta2.colours.filters.animation.AnimationFilter;
+
+/**
+ * Runs a windowed AnimationFilter over a stream of frames, keeping only the frames in its window in a ring buffer.
+ * A frame is passed on once it has left the window, so the filter can no longer change it,
+ * and the result is the same as running the filter over an array holding the whole animation.
+ * @author ssodelta
+ *
+ */
+final class FilterWindow implements Iterator<DImage> {
+
+	private final Iterator<DImage> source;
+	private final AnimationFilter filter;
+	private final int before, after;
+
+	private final DImage[] ring;
+
+	//Frames [emitted; loaded) are in the ring, and frames [emitted; filtered) have been filtered
+	private int emitted, filtered, loaded;
+
+	FilterWindow(Iterator<DImage> source, AnimationFilter filter){
+		if(!filter.isWindowed())
+			throw new IllegalArgumentException("Error, the filter "+filter+" needs the whole animation and cannot be streamed.");
+
+		this.source = source;
+		this.filter = filter;
+		this.before = filter.getFramesBefore();
+		this.after  = filter.getFramesAfter();
+
+		this.ring = new DImage[before + 1 + after];
+	}
+
+	@Override
+	public boolean hasNext(){
+		return emitted < loaded || source.hasNext();
+	}
+
+	@Override
+	public DImage next(){
+		while(filtered <= emitted+before && advance());
+
+		if(emitted >= filtered)
+			throw new NoSuchElementException();
+
+		DImage frame = ring[emitted % ring.length];
+		ring[emitted++ % ring.length] = null;
+
+		return frame;
+	}
+
+	/**
+	 * Filters the next frame.
+	 * @return false if there are no more frames.
+	 */
+	private boolean advance(){
+		while(loaded <= filtered+after && source.hasNext())
+			ring[loaded++ % ring.length] = source.next();
+
+		if(filtered >= loaded)
+			return false;
+
+		int lo = Math.max(0, filtered-before);
+
+		DImage[] window = new DImage[loaded-lo];
+
+		for(int j=0; j<window.length; j++)
+			window[j] = ring[(lo+j) % ring.length];
+
+		filter.applyFilter(window, filtered-lo);
+
+		//The filter may have replaced frames of the window
+		for(int j=0; j<window.length; j++)
+			ring[(lo+j) % ring.length] = window[j];
+
+		filtered++;
+		return true;
+	}
+}
@@ -0,0 +1,250 @@
+package com.delta2.colours;
+
+import static java.nio.file.StandardOpenOption.CREATE;
+import static java.nio.file.StandardOpenOption.DELETE_ON_CLOSE;
+import static java.nio.file.StandardOpenOption.READ;
+import static java.nio.file.StandardOpenOption.WRITE;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.delta2.colours.colourspace.ColourSpace;
+
+/**
+ * A FrameStore is a list of equally sized frames which are kept in a memory-mapped temporary file instead of on the heap,
+ * so the length of an animation is limited by the disk rather than by the maximum heap size.
+ * Every frame has a slot of fixed size in the file holding its alpha, colour space and float planes, so frames are stored exactly.
+ * 
+ * Only the most recently used frames are kept on the heap as DImage objects. Changes to a DImage obtained through get()
+ * are written back to the file when it leaves the window, so a DImage should not be changed after more than
+ * getCachedFrames() other frames have been accessed since it was obtained (re-obtain it with get() instead).
+ * A FrameStore is not thread-safe. Closing it deletes the file, except on systems which cannot delete a file while
+ * it is still mapped (such as Windows), where the mappings are only released once they are garbage collected;
+ * the file is then deleted when the virtual machine exits instead, or left behind in the temporary directory if that fails.
+ * A single frame may take up at most 2 GB (with four float planes, which holds frames of up to about 134 million pixels).
+ * @author ssodelta
+ *
+ */
+public final class FrameStore extends AbstractList<DImage> implements Closeable {
+
+	private static final ColourSpace[] SPACES = {ColourSpace.RGB, ColourSpace.HSV, ColourSpace.HSL, ColourSpace.CMYK};
+
+	private static final int MAX_CHANNELS = 4,
+							 HEADER       = 16,
+							 SEGMENT_SIZE = 1 << 30;
+
+	private final Path file;
+	private final FileChannel channel;
+	private final List<MappedByteBuffer> segments = new ArrayList<MappedByteBuffer>();
+	private final Map<Integer, DImage> cache;
+	private final int cachedFrames;
+
+	private int width, height, size;
+	private long slotSize;
+	private int slotsPerSegment;
+
+	/**
+	 * Constructs a new, empty FrameStore in a temporary file.
+	 * @param cachedFrames The number of frames kept on the heap.
+	 */
+	public FrameStore(int cachedFrames) throws IOException{
+		if(cachedFrames<1)
+			throw new IllegalArgumentException("Error, the number of cached frames must be a positive integer.");
+
+		this.file    = Files.createTempFile("delta-frames", ".bin");
+		this.channel = FileChannel.open(file, READ, WRITE, CREATE, DELETE_ON_CLOSE);
+		this.cachedFrames = cachedFrames;
+
+		//A cache in access order, which writes back the least recently used frame when it grows too large
+		this.cache = new LinkedHashMap<Integer, DImage>(16, 0.75f, true){
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<Integer, DImage> eldest){
+				if(size() <= FrameStore.this.cachedFrames)
+					return false;
+
+				write(eldest.getKey(), eldest.getValue());
+				return true;
+			}
+		};
+	}
+
+	public int getCachedFrames(){
+		return cachedFrames;
+	}
+
+	@Override
+	public int size(){
+		return size;
+	}
+
+	@Override
+	public DImage get(int i){
+		checkIndex(i);
+
+		DImage img = cache.get(i);
+
+		if(img == null){
+			img = read(i);
+			cache.put(i, img);
+		}
+
+		return img;
+	}
+
+	@Override
+	public DImage set(int i, DImage img){
+		checkFrame(img);
+
+		DImage old = get(i);
+		cache.put(i, img);
+
+		return old;
+	}
+
+	@Override
+	public void add(int i, DImage img){
+		if(i != size)
+			throw new UnsupportedOperationException("frames can only be added at the end of a FrameStore.");
+
+		checkFrame(img);
+
+		if(size == 0){
+			width  = img.getWidth();
+			height = img.getHeight();
+
+			slotSize = HEADER + (long) MAX_CHANNELS * width * height * 4;
+
+			//Every slot must fit in a single mapping
+			if(slotSize > Integer.MAX_VALUE)
+				throw new IllegalArgumentException("Error, a frame of "+width+"x"+height+" pixels takes up more than the 2 GB a FrameStore allows per frame.");
+
+			slotsPerSegment = (int) Math.max(1, SEGMENT_SIZE / slotSize);
+		}
+
+		size++;
+		cache.put(i, img);
+	}
+
+	/**
+	 * Writes every frame on the heap to the file.
+	 */
+	public void flush(){
+		for(Map.Entry<Integer, DImage> e : cache.entrySet())
+			write(e.getKey(), e.getValue());
+	}
+
+	/**
+	 * Deletes the file, after which the store can no longer be used.
+	 * If the file cannot be deleted yet because it is still mapped, it is deleted when the virtual machine exits.
+	 */
+	@Override
+	public void close() throws IOException{
+		cache.clear();
+		segments.clear();
+		size = 0;
+		channel.close();
+
+		if(Files.exists(file))
+			file.toFile().deleteOnExit();
+	}
+
+	private void checkIndex(int i){
+		if(i<0 || i>=size)
+			throw new IndexOutOfBoundsException("Index: "+i+", Size: "+size);
+	}
+
+	private void checkFrame(DImage img){
+		if(size>0 && (img.getWidth()!=width || img.getHeight()!=height))
+			throw new IllegalArgumentException("Error, every frame must be "+width+"x"+height+" pixels.");
+	}
+
+	/**
+	 * @return The slot of frame i, positioned at its start.
+	 */
+	private ByteBuffer slot(int i){
+		int s = i / slotsPerSegment;
+
+		try {
+			while(segments.size() <= s){
+				long start = segments.size() * slotsPerSegment * slotSize;
+				segments.add(channel.map(FileChannel.MapMode.READ_WRITE, start, slotsPerSegment * slotSize));
+			}
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+
+		ByteBuffer slot = segments.get(s).duplicate().order(ByteOrder.nativeOrder());
+		slot.position((int) ((i % slotsPerSegment) * slotSize));
+
+		return slot;
+	}
+
+	private void write(int i, DImage img){
+		DRaster raster = img.getRaster();
+		int space = indexOf(raster.getColourSpace());
+
+		//Colour spaces this store does not know are stored as RGB
+		if(space < 0){
+			raster = new DRaster(raster).convertTo(ColourSpace.RGB);
+			space  = 0;
+		}
+
+		if(raster.getChannels() > MAX_CHANNELS)
+			throw new IllegalArgumentException("Error, a FrameStore holds at most "+MAX_CHANNELS+" channels per frame.");
+
+		ByteBuffer slot = slot(i);
+
+		slot.putDouble(img.getAlpha());
+		slot.putInt(space);
+		slot.putInt(raster.getChannels());
+
+		for(int c=0; c<raster.getChannels(); c++){
+			slot.asFloatBuffer().put(raster.getPlane(c), 0, width*height);
+			slot.position(slot.position() + width*height*4);
+		}
+	}
+
+	private DImage read(int i){
+		ByteBuffer slot = slot(i);
+
+		double alpha = slot.getDouble();
+		ColourSpace cs = SPACES[slot.getInt()];
+
+		DRaster raster = new DRaster(width, height, slot.getInt());
+
+		if(cs != ColourSpace.RGB)
+			raster.setColourSpace(cs);
+
+		for(int c=0; c<raster.getChannels(); c++){
+			slot.asFloatBuffer().get(raster.getPlane(c), 0, width*height);
+			slot.position(slot.position() + width*height*4);
+		}
+
+		DImage img = new DImage(raster);
+		img.setAlpha(alpha);
+
+		return img;
+	}
+
+	private static int indexOf(ColourSpace cs){
+		for(int i=0; i<SPACES.length; i++)
+			if(SPACES[i] == cs)
+				return i;
+
+		return -1;
+	}
+}
@@ -0,0 +1,108 @@
+package com.delta2.colours;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Splits a raster into rectangular tiles and processes them in parallel on a ForkJoinPool.
+ * Tasks must only write inside their own tile, so the result never depends on the number of threads.
+ * @author ssodelta
+ *
+ */
+public final class TileExecutor {
+
+	/**
+	 * A unit of work covering the pixels [x0; x1) x [y0; y1).
+	 */
+	public interface Task {
+		public void run(int x0, int y0, int x1, int y1);
+	}
+
+	public static final int TILE_SIZE = 64;
+
+	private static ForkJoinPool pool = ForkJoinPool.commonPool();
+
+	private TileExecutor(){}
+
+	/**
+	 * Sets the pool used for all subsequent tile executions.
+	 * @param p The pool to use (ForkJoinPool.commonPool() by default).
+	 */
+	public static void setPool(ForkJoinPool p){
+		if(p==null)
+			throw new IllegalArgumentException("Error, the pool must not be null.");
+
+		pool = p;
+	}
+
+	public static ForkJoinPool getPool(){
+		return pool;
+	}
+
+	/**
+	 * Runs 'task' once for every TILE_SIZE x TILE_SIZE tile of a width x height raster, and returns once all tiles are done.
+	 */
+	public static void forEachTile(int width, int height, Task task){
+		forEachTile(width, height, TILE_SIZE, TILE_SIZE, task);
+	}
+
+	/**
+	 * Runs 'task' once for every tileWidth x tileHeight tile of a width x height raster, and returns once all tiles are done.
+	 */
+	public static void forEachTile(int width, int height, int tileWidth, int tileHeight, Task task){
+		int cols = (width  + tileWidth  - 1) / tileWidth,
+			rows = (height + tileHeight - 1) / tileHeight;
+
+		TileAction action = new TileAction(task, 0, cols*rows, cols, width, height, tileWidth, tileHeight);
+
+		if(cols*rows == 1)
+			action.compute();
+		else if(ForkJoinTask.getPool() == pool)
+			action.invoke();
+		else
+			pool.invoke(action);
+	}
+
+	/**
+	 * Runs 'task' once for every horizontal strip of 'stripHeight' full-width rows.
+	 */
+	public static void forEachStrip(int width, int height, int stripHeight, Task task){
+		forEachTile(width, height, width, stripHeight, task);
+	}
+
+	private static final class TileAction extends RecursiveAction {
+
+		private static final long serialVersionUID = 1L;
+
+		private final Task task;
+		private final int lo, hi, cols, width, height, tileWidth, tileHeight;
+
+		TileAction(Task task, int lo, int hi, int cols, int width, int height, int tileWidth, int tileHeight){
+			this.task = task;
+			this.lo   = lo;
+			this.hi   = hi;
+			this.cols = cols;
+
+			this.width      = width;
+			this.height     = height;
+			this.tileWidth  = tileWidth;
+			this.tileHeight = tileHeight;
+		}
+
+		@Override
+		protected void compute(){
+			if(hi-lo > 1){
+				int mid = (lo+hi) >>> 1;
+				invokeAll(new TileAction(task, lo, mid, cols, width, height, tileWidth, tileHeight),
+						  new TileAction(task, mid, hi, cols, width, height, tileWidth, tileHeight));
+				return;
+			}
+
+			int x0 = (lo % cols) * tileWidth,
+				y0 = (lo / cols) * tileHeight;
+
+			task.run(x0, y0, Math.min(width, x0+tileWidth), Math.min(height, y0+tileHeight));
+		}
+	}
+}
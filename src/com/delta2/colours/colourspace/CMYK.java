@@ -1,34 +1,79 @@
 package com.delta2.colours.colourspace;
 
-import com.delta2.colours.ColourUtil;
-
 final class CMYK implements ColourSpace {
 
 	@Override
 	public double[] fromRGB(double[] data) {
+		double[] out = new double[4];
+		fromRGB(data, out);
+		return out;
+	}
+
+	@Override
+	public double[] toRGB(double[] data) {
+		double[] rgb = new double[3];
+		toRGB(data, rgb);
+		return rgb;
+	}
+
+	@Override
+	public void fromRGB(double[] data, double[] out) {
 		double r = data[0],
 			   g = data[1],
 			   b = data[2];
 			
-		double k = 1-ColourUtil.max(r,g,b);
+		double k = 1-Math.max(r, Math.max(g, b));
 			
-		double c = (1-r-k)/(1-k),
-			   m = (1-g-k)/(1-k),
-			   y = (1-b-k)/(1-k);
-		
-		return new double[]{c,m,y,k};
+		out[0] = (1-r-k)/(1-k);
+		out[1] = (1-g-k)/(1-k);
+		out[2] = (1-b-k)/(1-k);
+		out[3] = k;
 	}
 
 	@Override
-	public double[] toRGB(double[] data) {
+	public void toRGB(double[] data, double[] rgb) {
 		
 		double negk = 1-data[3];
 		
-		double r = (1-data[0]) * negk;
-		double g = (1-data[1]) * negk;
-		double b = (1-data[2]) * negk;
-		
-		return new double[]{r,g,b};
+		rgb[0] = (1-data[0]) * negk;
+		rgb[1] = (1-data[1]) * negk;
+		rgb[2] = (1-data[2]) * negk;
+	}
+
+	@Override
+	public int getDimensions() {
+		return 4;
+	}
+
+	@Override
+	public void fromRGB(float[][] src, int srcOff, float[][] dst, int dstOff, int count) {
+		float[] r = src[0], g = src[1], b = src[2];
+
+		for(int i=0; i<count; i++){
+			double rr = r[srcOff+i],
+				   gg = g[srcOff+i],
+				   bb = b[srcOff+i];
+
+			double k = 1-Math.max(rr, Math.max(gg, bb));
+
+			dst[0][dstOff+i] = (float) ((1-rr-k)/(1-k));
+			dst[1][dstOff+i] = (float) ((1-gg-k)/(1-k));
+			dst[2][dstOff+i] = (float) ((1-bb-k)/(1-k));
+			dst[3][dstOff+i] = (float) k;
+		}
+	}
+
+	@Override
+	public void toRGB(float[][] src, int srcOff, float[][] dst, int dstOff, int count) {
+		float[] c = src[0], m = src[1], y = src[2], k = src[3];
+
+		for(int i=0; i<count; i++){
+			double negk = 1-k[srcOff+i];
+
+			dst[0][dstOff+i] = (float) ((1-c[srcOff+i]) * negk);
+			dst[1][dstOff+i] = (float) ((1-m[srcOff+i]) * negk);
+			dst[2][dstOff+i] = (float) ((1-y[srcOff+i]) * negk);
+		}
 	}
 
 }
@@ -1,10 +1,109 @@
 package com.delta2.colours.colourspace;
 
+/**
+ * A ColourSpace converts colours to and from RGB.
+ * Besides the per-colour methods, every colour space can convert whole planes of pixels
+ * (one float array per channel, as in a DRaster) without allocating anything per pixel.
+ */
 public interface ColourSpace {
 	
 	public double[] fromRGB(double[] data);
 	public double[] toRGB(double[] data);
 	
+	/**
+	 * Converts a single RGB colour into this colour space, writing the channels into 'out' instead of allocating a new array.
+	 */
+	public default void fromRGB(double[] rgb, double[] out){
+		double[] res = fromRGB(rgb);
+		System.arraycopy(res, 0, out, 0, res.length);
+	}
+	
+	/**
+	 * Converts a single colour in this colour space into RGB, writing the channels into 'rgb' instead of allocating a new array.
+	 */
+	public default void toRGB(double[] data, double[] rgb){
+		double[] res = toRGB(data);
+		System.arraycopy(res, 0, rgb, 0, 3);
+	}
+	
+	/**
+	 * @return The number of channels of a colour in this colour space.
+	 */
+	public default int getDimensions(){
+		return fromRGB(new double[3]).length;
+	}
+	
+	/**
+	 * Converts 'count' pixels from RGB into this colour space.
+	 * @param src The RGB planes; pixel i is (src[0][srcOff+i], src[1][srcOff+i], src[2][srcOff+i]).
+	 * @param srcOff The index of the first pixel in the source planes.
+	 * @param dst The destination planes, one for each of the getDimensions() channels.
+	 * @param dstOff The index of the first pixel in the destination planes.
+	 * @param count The number of pixels to convert.
+	 */
+	public default void fromRGB(float[][] src, int srcOff, float[][] dst, int dstOff, int count){
+		double[] rgb = new double[3],
+				 out = new double[getDimensions()];
+		
+		for(int i=0; i<count; i++){
+			for(int c=0; c<3; c++)
+				rgb[c] = src[c][srcOff+i];
+			
+			fromRGB(rgb, out);
+			
+			for(int c=0; c<out.length; c++)
+				dst[c][dstOff+i] = (float) out[c];
+		}
+	}
+	
+	/**
+	 * Converts 'count' pixels from this colour space into RGB.
+	 * @param src The planes of this colour space, one for each of the getDimensions() channels.
+	 * @param srcOff The index of the first pixel in the source planes.
+	 * @param dst The three RGB planes.
+	 * @param dstOff The index of the first pixel in the destination planes.
+	 * @param count The number of pixels to convert.
+	 */
+	public default void toRGB(float[][] src, int srcOff, float[][] dst, int dstOff, int count){
+		double[] data = new double[getDimensions()],
+				 rgb  = new double[3];
+		
+		for(int i=0; i<count; i++){
+			for(int c=0; c<data.length; c++)
+				data[c] = src[c][srcOff+i];
+			
+			toRGB(data, rgb);
+			
+			for(int c=0; c<3; c++)
+				dst[c][dstOff+i] = (float) rgb[c];
+		}
+	}
+	
+	/**
+	 * Converts 'count' pixels between two colour spaces. Pixels are only converted through RGB when neither space is RGB,
+	 * in which case they go through a small block of scratch planes at a time.
+	 */
+	public static void convert(ColourSpace from, ColourSpace to, float[][] src, int srcOff, float[][] dst, int dstOff, int count){
+		if(from == to){
+			for(int c=0; c<from.getDimensions(); c++)
+				if(src[c] != dst[c] || srcOff != dstOff)
+					System.arraycopy(src[c], srcOff, dst[c], dstOff, count);
+		} else if(from == RGB){
+			to.fromRGB(src, srcOff, dst, dstOff, count);
+		} else if(to == RGB){
+			from.toRGB(src, srcOff, dst, dstOff, count);
+		} else {
+			int block = Math.min(count, 1024);
+			float[][] rgb = new float[3][block];
+			
+			for(int i=0; i<count; i+=block){
+				int n = Math.min(block, count-i);
+				from.toRGB(src, srcOff+i, rgb, 0, n);
+				to.fromRGB(rgb, 0, dst, dstOff+i, n);
+			}
+		}
+	}
+	
 	public static final ColourSpace HSL  = new HSL(),
 							        HSV  = new HSV(),
 							        RGB  = new RGB(),
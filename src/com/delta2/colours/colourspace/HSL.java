@@ -6,16 +6,72 @@ final class HSL implements ColourSpace {
 
 	@Override
 	public double[] fromRGB(double[] data) {
-		double r = data[0],
-			   g = data[1],
-			   b = data[2];
-		
-		double M = ColourUtil.max(r, g, b),
-			   m = ColourUtil.min(r, g, b);
+		double[] out = new double[3];
+		fromRGB(data, out);
+		return out;
+	}
+
+	@Override
+	public double[] toRGB(double[] data) {
+		double[] rgb = new double[3];
+		toRGB(data, rgb);
+		return rgb;
+	}
+
+	@Override
+	public void fromRGB(double[] rgb, double[] out) {
+		fromRGB(rgb[0], rgb[1], rgb[2], out);
+	}
+
+	@Override
+	public void toRGB(double[] data, double[] rgb) {
+		toRGB(data[0], data[1], data[2], rgb);
+	}
+
+	@Override
+	public int getDimensions() {
+		return 3;
+	}
+
+	@Override
+	public void fromRGB(float[][] src, int srcOff, float[][] dst, int dstOff, int count) {
+		float[] r = src[0], g = src[1], b = src[2],
+				h = dst[0], s = dst[1], l = dst[2];
+
+		double[] px = new double[3];
+
+		for(int i=0; i<count; i++){
+			fromRGB(r[srcOff+i], g[srcOff+i], b[srcOff+i], px);
+
+			h[dstOff+i] = (float) px[0];
+			s[dstOff+i] = (float) px[1];
+			l[dstOff+i] = (float) px[2];
+		}
+	}
+
+	@Override
+	public void toRGB(float[][] src, int srcOff, float[][] dst, int dstOff, int count) {
+		float[] h = src[0], s = src[1], l = src[2],
+				r = dst[0], g = dst[1], b = dst[2];
+
+		double[] px = new double[3];
+
+		for(int i=0; i<count; i++){
+			toRGB(h[srcOff+i], s[srcOff+i], l[srcOff+i], px);
+
+			r[dstOff+i] = (float) px[0];
+			g[dstOff+i] = (float) px[1];
+			b[dstOff+i] = (float) px[2];
+		}
+	}
+
+	private static void fromRGB(double r, double g, double b, double[] out) {
+		double M = Math.max(r, Math.max(g, b)),
+			   m = Math.min(r, Math.min(g, b));
 		
 		double C = M - m;
 		
-		double h = ColourUtil.getHue(r,g,b);
+		double h = ColourUtil.getHue(r,g,b,M,m);
 		
 		//The Lightness L component is defined as (src: https://en.wikipedia.org/wiki/HSL_and_HSV#Hue_and_chroma)
 		double L = 0.5*(M + m);
@@ -27,18 +83,19 @@ final class HSL implements ColourSpace {
 		if(C != 0.0)
 			s = C / (1 - Math.abs((2*L) - 1));
 		
-		
-		return new double[]{h,s,L};
+		out[0] = h;
+		out[1] = s;
+		out[2] = L;
 	}
 
-	@Override
-	public double[] toRGB(double[] data) {
+	private static void toRGB(double h, double s, double l, double[] rgb) {
 		double  r = 0.0,
 				g = 0.0,
 				b = 0.0;
-
-		double  c = ColourUtil.bound(data[2],0,1) * ColourUtil.bound(data[1],0,1),
-			   hh = ColourUtil.mod(data[0], 1) * 6.0,
+		
+		//In HSL, the chroma C is (1 - |2L - 1|) * S (src: https://en.wikipedia.org/wiki/HSL_and_HSV#From_HSL)
+		double  c = (1 - Math.abs(2*ColourUtil.bound(l,0,1) - 1)) * ColourUtil.bound(s,0,1),
+			   hh = ColourUtil.mod(h, 1) * 6.0,
 			    x = c * (1 - Math.abs((hh % 2) - 1));
 		
 		if(0 <= hh && hh < 1){
@@ -61,9 +118,11 @@ final class HSL implements ColourSpace {
 			b = x;
 		}
 		
-		double m = ColourUtil.bound(data[2],0,1) - c;
+		double m = ColourUtil.bound(l,0,1) - c/2;
 		
-		return new double[]{r + m, g + m, b + m};
+		rgb[0] = r + m;
+		rgb[1] = g + m;
+		rgb[2] = b + m;
 	}
 
 }
@@ -12,4 +12,34 @@ final class RGB implements ColourSpace {
 		return data;
 	}
 
+	@Override
+	public void fromRGB(double[] rgb, double[] out) {
+		System.arraycopy(rgb, 0, out, 0, 3);
+	}
+
+	@Override
+	public void toRGB(double[] data, double[] rgb) {
+		System.arraycopy(data, 0, rgb, 0, 3);
+	}
+
+	@Override
+	public int getDimensions() {
+		return 3;
+	}
+
+	@Override
+	public void fromRGB(float[][] src, int srcOff, float[][] dst, int dstOff, int count) {
+		copy(src, srcOff, dst, dstOff, count);
+	}
+
+	@Override
+	public void toRGB(float[][] src, int srcOff, float[][] dst, int dstOff, int count) {
+		copy(src, srcOff, dst, dstOff, count);
+	}
+
+	private static void copy(float[][] src, int srcOff, float[][] dst, int dstOff, int count){
+		for(int c=0; c<3; c++)
+			System.arraycopy(src[c], srcOff, dst[c], dstOff, count);
+	}
+
 }
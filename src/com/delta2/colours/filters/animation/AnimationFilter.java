@@ -2,8 +2,44 @@ package com.delta2.colours.filters.animation;
 
 import com.delta2.colours.DImage;
 
+/**
+ * An AnimationFilter changes the frames of an animation one at a time, in order, and may look at the frames around
+ * the one it is changing. Frames before it have already been changed by the filter, frames after it have not.
+ * 
+ * A filter which only looks at a bounded number of frames around the current one should say so through
+ * getFramesBefore() and getFramesAfter(), so it can be run over a window of frames instead of the whole animation.
+ * It is then given an array holding just that window (shorter at the ends of the animation), with the current frame at index i.
+ * @author ssodelta
+ *
+ */
 public interface AnimationFilter {
 
+	/**
+	 * The window of a filter which may look at any frame of the animation.
+	 */
+	public static final int WHOLE_ANIMATION = -1;
+
 	public void applyFilter(DImage[] images, int i);
 	
+	/**
+	 * @return The number of frames before the current one this filter looks at, or WHOLE_ANIMATION.
+	 */
+	public default int getFramesBefore(){
+		return WHOLE_ANIMATION;
+	}
+	
+	/**
+	 * @return The number of frames after the current one this filter looks at, or WHOLE_ANIMATION.
+	 */
+	public default int getFramesAfter(){
+		return WHOLE_ANIMATION;
+	}
+	
+	/**
+	 * @return Whether this filter can be run over a window of frames.
+	 */
+	public default boolean isWindowed(){
+		return getFramesBefore() >= 0 && getFramesAfter() >= 0;
+	}
+	
 }
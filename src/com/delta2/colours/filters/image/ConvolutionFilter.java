@@ -1,9 +1,15 @@
 package com.delta2.colours.filters.image;
 
-import com.delta2.colours.Colour;
+import java.util.Arrays;
+
+import com.delta2.colours.DRaster;
+import com.delta2.colours.TileExecutor;
 
 /**
  * A ConvolutionFilter represents a filter, that uses a coefficient matrix to compute the new value of a given pixel based on the neighboring pixels.
+ * The matrix is analysed once when the filter is constructed: rank-1 matrices are applied as two 1-dimensional passes,
+ * and all other matrices through a list of their non-zero taps, with a separate bounds-checked loop for the image border.
+ * Kernels that would still cost too many multiply-adds per pixel are convolved by FFT instead.
  * @author ssodelta
  *
  */
@@ -13,6 +19,10 @@ public class ConvolutionFilter implements DImageFilter {
 	private double factor;
 	private boolean relative;
 	
+	private final Kernel kernel;
+	private final int[] hOffsets, vOffsets;
+	private final double[] hWeights, vWeights;
+	
 	/**
 	 * Constructs a new ConvolutionFilter.
 	 * @param matrix The coefficient matrix.
@@ -23,6 +33,41 @@ public class ConvolutionFilter implements DImageFilter {
 		this.matrix = matrix;
 		this.factor = factor;
 		this.relative = preserveAverage;
+		this.kernel   = new Kernel(matrix);
+		
+		if(kernel.isSeparable() && kernel.separableCost() < kernel.directCost()){
+			hOffsets = offsets(kernel.col, kernel.originX);
+			hWeights = weights(kernel.col);
+			vOffsets = offsets(kernel.row, kernel.originY);
+			vWeights = weights(kernel.row);
+		} else {
+			hOffsets = vOffsets = null;
+			hWeights = vWeights = null;
+		}
+	}
+	
+	private static int[] offsets(double[] factor, int origin){
+		int[] res = new int[weights(factor).length];
+		
+		for(int i=0, k=0; i<factor.length; i++)
+			if(factor[i] != 0)
+				res[k++] = origin + i;
+		
+		return res;
+	}
+	
+	private static double[] weights(double[] factor){
+		int n = 0;
+		for(double v : factor)
+			if(v != 0) n++;
+		
+		double[] res = new double[n];
+		
+		for(int i=0, k=0; i<factor.length; i++)
+			if(factor[i] != 0)
+				res[k++] = factor[i];
+		
+		return res;
 	}
 	
 	/**
@@ -54,40 +99,195 @@ public class ConvolutionFilter implements DImageFilter {
 	}
 	
 	@Override
-	public Colour filter(int x, int y, Colour[][] raster) {
+	public void filter(int x, int y, DRaster raster, float[] out) {
+		for(int c=0; c<out.length; c++)
+			out[c] = border(raster, raster.getPlane(c), x, y);
+	}
+	
+	@Override
+	public void filter(DRaster src, DRaster dst, int x0, int y0, int x1, int y1){
+		int w = src.getWidth(),
+			h = src.getHeight(),
+			stride = src.getStride();
 		
-		int imageWidth  = raster.length,
-			imageHeight = raster[0].length;
+		int n = kernel.tapWeight.length;
+		int[] offsets = new int[n];
 		
-		int filterWidth  = matrix.length,
-			filterHeight = matrix[0].length;
-
-		Colour res = null;
+		for(int k=0; k<n; k++)
+			offsets[k] = kernel.tapY[k]*stride + kernel.tapX[k];
 		
-		double f = 0;
-
-		for(int filterX=0; filterX<filterWidth;  filterX++)
-		for(int filterY=0; filterY<filterHeight; filterY++){
-			int imageX = x - filterWidth/2  + filterX,
-				imageY = y - filterHeight/2 + filterY;
+		double[] weights = kernel.tapWeight;
+		double scale = factor/(relative ? kernel.sum : 1);
+		
+		//Pixels in [xa; xb) x [ya; yb) have every tap inside the image
+		int xa = Math.max(x0, Math.min(x1, -kernel.minX)),
+			xb = Math.max(xa, Math.min(x1, w - kernel.maxX)),
+			ya = Math.max(y0, Math.min(y1, -kernel.minY)),
+			yb = Math.max(ya, Math.min(y1, h - kernel.maxY));
+		
+		for(int c=0; c<src.getChannels(); c++){
+			float[] s = src.getPlane(c),
+					d = dst.getPlane(c);
+			
+			for(int y=y0; y<y1; y++){
+				int row = y*stride;
+				
+				if(y<ya || y>=yb){
+					for(int x=x0; x<x1; x++)
+						d[row + x] = border(src, s, x, y);
+					continue;
+				}
+				
+				for(int x=x0; x<xa; x++)
+					d[row + x] = border(src, s, x, y);
+				
+				for(int i=row+xa; i<row+xb; i++){
+					double sum = 0;
+					
+					for(int k=0; k<n; k++)
+						sum += weights[k] * s[i + offsets[k]];
+					
+					d[i] = (float) (sum * scale);
+				}
+				
+				for(int x=xb; x<x1; x++)
+					d[row + x] = border(src, s, x, y);
+			}
+		}
+	}
+	
+	@Override
+	public void apply(DRaster src, DRaster dst){
+		int cost = hWeights == null ? kernel.directCost() : hWeights.length + vWeights.length;
+		
+		if(FFTConvolution.isWorthwhile(cost) && (!relative || kernel.sum != 0)){
+			FFTConvolution.apply(kernel, src, dst, factor, relative);
+			return;
+		}
+		
+		if(hWeights == null){
+			DImageFilter.super.apply(src, dst);
+			return;
+		}
+		
+		int w = src.getWidth(),
+			h = src.getHeight();
+		
+		double[] hNorm = norms(hOffsets, hWeights, w),
+				 vNorm = norms(vOffsets, vWeights, h);
+		
+		float[][] tmp = new float[src.getChannels()][w*h];
+		
+		//Horizontal pass into tmp
+		TileExecutor.forEachStrip(w, h, STRIP_HEIGHT, (x0,y0,x1,y1) -> {
+			for(int c=0; c<tmp.length; c++){
+				float[] s = src.getPlane(c);
+				
+				for(int y=y0; y<y1; y++)
+					pass(s, y*src.getStride(), tmp[c], y*w, w, hOffsets, hWeights);
+			}
+		});
+		
+		//Vertical pass into dst, accumulating whole rows at a time
+		TileExecutor.forEachStrip(w, h, STRIP_HEIGHT, (x0,y0,x1,y1) -> {
+			double[] acc = new double[w];
+			
+			for(int c=0; c<tmp.length; c++){
+				float[] t = tmp[c],
+						d = dst.getPlane(c);
+				
+				for(int y=y0; y<y1; y++){
+					Arrays.fill(acc, 0);
+					
+					for(int k=0; k<vOffsets.length; k++){
+						int yy = y + vOffsets[k];
+						if(yy<0 || yy>=h)
+							continue;
+						
+						double weight = vWeights[k];
+						int row = yy*w;
+						
+						for(int x=0; x<w; x++)
+							acc[x] += weight * t[row + x];
+					}
+					
+					int row = y*dst.getStride();
+					
+					for(int x=0; x<w; x++)
+						d[row + x] = (float) (acc[x] * factor/(relative ? hNorm[x]*vNorm[y] : 1));
+				}
+			}
+		});
+	}
+	
+	private static final int STRIP_HEIGHT = 16;
+	
+	/**
+	 * Sums the weights of the taps which fall inside [0; n) for every position in [0; n).
+	 */
+	private static double[] norms(int[] offsets, double[] weights, int n){
+		double[] res = new double[n];
+		
+		for(int i=0; i<n; i++)
+			for(int k=0; k<offsets.length; k++)
+				if(i+offsets[k] >= 0 && i+offsets[k] < n)
+					res[i] += weights[k];
+		
+		return res;
+	}
+	
+	/**
+	 * Convolves a line of n samples with a 1-dimensional list of taps, skipping the taps which fall outside the line.
+	 */
+	private static void pass(float[] src, int srcOff, float[] dst, int dstOff, int n, int[] offsets, double[] weights){
+		int m = offsets.length;
+		int lo = Math.max(0,  Math.min(n, -offsets[0])),
+			hi = Math.max(lo, Math.min(n, n - offsets[m-1]));
+		
+		for(int i=0; i<n; i++){
+			double sum = 0;
+			
+			if(i>=lo && i<hi){
+				for(int k=0; k<m; k++)
+					sum += weights[k] * src[srcOff + i + offsets[k]];
+			} else {
+				for(int k=0; k<m; k++){
+					int j = i + offsets[k];
+					if(j>=0 && j<n)
+						sum += weights[k] * src[srcOff + j];
+				}
+			}
+			
+			dst[dstOff + i] = (float) sum;
+		}
+	}
+	
+	/**
+	 * Computes one channel of a single pixel, skipping the taps which fall outside the image.
+	 */
+	private float border(DRaster raster, float[] plane, int x, int y){
+		int imageWidth  = raster.getWidth(),
+			imageHeight = raster.getHeight();
+		
+		double sum = 0,
+			   f   = 0;
+		
+		for(int k=0; k<kernel.tapWeight.length; k++){
+			int imageX = x + kernel.tapX[k],
+				imageY = y + kernel.tapY[k];
 			
 			if(imageX < 0 || imageY < 0 || imageX>=imageWidth || imageY>=imageHeight)
 				continue;
 			
-			double scale = matrix[filterX][filterY];
+			double scale = kernel.tapWeight[k];
 			
 			if(relative)
 				f += scale;
 			
-			Colour next = raster[imageX][imageY];
-			
-			res = res==null ? next.scale(scale) : res.add(next.scale(scale));
-			
+			sum += scale * plane[raster.index(imageX, imageY)];
 		}
 		
-		Colour result = res.scale(factor/(relative ? f : 1));
-		
-		return result;
+		return (float) (sum * factor/(relative ? f : 1));
 	}
 
 }
@@ -1,9 +1,14 @@
 package com.delta2.colours.filters.image;
 
-import com.delta2.colours.Colour;
+import com.delta2.colours.DRaster;
+import com.delta2.colours.TileExecutor;
+import com.delta2.colours.colourspace.ColourSpace;
 
 /**
  * This class represents an ImageFilter.
+ * Filters are always applied from a source raster into a separate destination raster,
+ * so implementations may freely read neighbouring pixels, but must not keep per-image state between calls,
+ * as tiles of the same image are filtered concurrently.
  * @author ssodelta
  *
  */
@@ -13,10 +18,47 @@ public interface DImageFilter {
 	 * Apply to this filter to a single pixel.
 	 * @param x The x-coordinate of the pixel.
 	 * @param y The y-coordinate of the pixel.
-	 * @param raster The array of Colors in the image as a whole.
-	 * @return This colored as perceived through this filter.
+	 * @param raster The packed raster of the image as a whole, in a colour space this filter supports.
+	 * @param out Receives the channels of the pixel as perceived through this filter.
 	 */
-	public Colour filter(int x, int y, Colour[][] raster);
+	public void filter(int x, int y, DRaster raster, float[] out);
 	
-	public static final DImageFilter IDENTITY = (x,y,raster) -> raster[x][y];
+	/**
+	 * Apply this filter to the pixels [x0; x1) x [y0; y1), reading from 'src' and writing to 'dst'.
+	 * Subclasses may override this to process a whole tile at a time.
+	 */
+	public default void filter(DRaster src, DRaster dst, int x0, int y0, int x1, int y1){
+		float[] out = new float[src.getChannels()];
+		
+		for(int y=y0; y<y1; y++)
+		for(int x=x0; x<x1; x++){
+			filter(x, y, src, out);
+			dst.setPixel(x, y, out);
+		}
+	}
+	
+	/**
+	 * @return The colour space this filter expects the image in, or null if it works in any colour space.
+	 * By default filters work in RGB.
+	 */
+	public default ColourSpace getColourSpace(){
+		return ColourSpace.RGB;
+	}
+	
+	/**
+	 * @return Whether this filter gives the same result when the image is in the colour space 'cs'.
+	 */
+	public default boolean supports(ColourSpace cs){
+		return getColourSpace()==null || getColourSpace()==cs;
+	}
+	
+	/**
+	 * Apply this filter to every pixel of 'src', writing the result to 'dst' (which has the same dimensions and colour space).
+	 * By default the image is split into tiles which are filtered in parallel.
+	 */
+	public default void apply(DRaster src, DRaster dst){
+		TileExecutor.forEachTile(src.getWidth(), src.getHeight(), (x0,y0,x1,y1) -> filter(src, dst, x0, y0, x1, y1));
+	}
+	
+	public static final DImageFilter IDENTITY = (x,y,raster,out) -> raster.getPixel(x, y, out);
 }
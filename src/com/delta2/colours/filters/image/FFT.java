@@ -0,0 +1,122 @@
+package com.delta2.colours.filters.image;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * An in-place, iterative radix-2 fast Fourier transform of a fixed power-of-two length,
+ * with its twiddle factors and bit-reversal permutation computed once.
+ * @author ssodelta
+ *
+ */
+final class FFT {
+
+	private static final ConcurrentHashMap<Integer, FFT> CACHE = new ConcurrentHashMap<Integer, FFT>();
+
+	final int n;
+
+	private final double[] cos, sin;
+	private final int[] rev;
+
+	private FFT(int n){
+		if(n<1 || Integer.bitCount(n)!=1)
+			throw new IllegalArgumentException("Error, the length of an FFT must be a power of two.");
+
+		this.n = n;
+
+		cos = new double[n/2];
+		sin = new double[n/2];
+
+		for(int i=0; i<n/2; i++){
+			cos[i] = Math.cos(2*Math.PI*i/n);
+			sin[i] = Math.sin(2*Math.PI*i/n);
+		}
+
+		rev = new int[n];
+		int bits = Integer.numberOfTrailingZeros(n);
+
+		for(int i=0; i<n; i++)
+			rev[i] = bits==0 ? 0 : Integer.reverse(i) >>> (32-bits);
+	}
+
+	/**
+	 * @return The shared FFT of length n.
+	 */
+	static FFT of(int n){
+		FFT fft = CACHE.get(n);
+
+		if(fft==null){
+			fft = new FFT(n);
+			CACHE.putIfAbsent(n, fft);
+		}
+
+		return fft;
+	}
+
+	static int nextPowerOfTwo(int n){
+		return n<=1 ? 1 : Integer.highestOneBit(n-1) << 1;
+	}
+
+	/**
+	 * Transforms the n complex values (re[off+i], im[off+i]) in place. The inverse transform is not scaled by 1/n.
+	 */
+	void transform(double[] re, double[] im, int off, boolean inverse){
+		for(int i=0; i<n; i++){
+			int j = rev[i];
+			if(j>i){
+				double t = re[off+i]; re[off+i] = re[off+j]; re[off+j] = t;
+					   t = im[off+i]; im[off+i] = im[off+j]; im[off+j] = t;
+			}
+		}
+
+		double sign = inverse ? 1 : -1;
+
+		for(int len=2; len<=n; len<<=1){
+			int half = len/2,
+				step = n/len;
+
+			for(int i=0; i<n; i+=len)
+			for(int k=0; k<half; k++){
+				double wr = cos[k*step],
+					   wi = sign*sin[k*step];
+
+				int a = off+i+k,
+					b = a+half;
+
+				double xr = re[b]*wr - im[b]*wi,
+					   xi = re[b]*wi + im[b]*wr;
+
+				re[b] = re[a] - xr;
+				im[b] = im[a] - xi;
+				re[a] += xr;
+				im[a] += xi;
+			}
+		}
+	}
+
+	/**
+	 * Transforms a rows x n array of complex values (stored row by row with length n) in 2 dimensions,
+	 * using 'column' (a rows-length FFT) for the vertical transforms.
+	 * @param tmpRe Scratch space of at least 'rows' elements.
+	 * @param tmpIm Scratch space of at least 'rows' elements.
+	 */
+	void transform2D(FFT column, double[] re, double[] im, double[] tmpRe, double[] tmpIm, boolean inverse){
+		int rows = column.n;
+
+		for(int y=0; y<rows; y++)
+			transform(re, im, y*n, inverse);
+
+		for(int x=0; x<n; x++){
+			for(int y=0; y<rows; y++){
+				tmpRe[y] = re[y*n + x];
+				tmpIm[y] = im[y*n + x];
+			}
+
+			column.transform(tmpRe, tmpIm, 0, inverse);
+
+			for(int y=0; y<rows; y++){
+				re[y*n + x] = tmpRe[y];
+				im[y*n + x] = tmpIm[y];
+			}
+		}
+	}
+}
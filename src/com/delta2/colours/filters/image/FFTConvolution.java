@@ -0,0 +1,181 @@
+package com.delta2.colours.filters.image;
+
+import java.util.Arrays;
+
+import com.delta2.colours.DRaster;
+import com.delta2.colours.TileExecutor;
+
+/**
+ * Convolution by FFT for large kernels, using overlap-add over blocks of the image.
+ * Every block is zero-padded to a power-of-two size, transformed, multiplied by the (cached) kernel spectrum,
+ * transformed back and added into an accumulator. Two real channels are transformed at once as the real and imaginary
+ * part of one complex plane, and for preserveAverage the in-bounds weight sum of every pixel is obtained the same way,
+ * by convolving a plane of ones.
+ * @author ssodelta
+ *
+ */
+final class FFTConvolution {
+
+	/**
+	 * Multiply-adds per pixel of the cheapest direct path above which the FFT path is used.
+	 * Measured on one core with dense kernels on 640x240 and 1024x1024 RGB images: both paths break even around 11x11 (121 taps),
+	 * the FFT path is about 3x faster at 15x15 and 25x faster at 63x63, and 1.5-3x slower at 7x7.
+	 */
+	static final int THRESHOLD = 150;
+
+	private FFTConvolution(){}
+
+	static boolean isWorthwhile(int directCost){
+		return directCost >= THRESHOLD;
+	}
+
+	static void apply(Kernel kernel, DRaster src, DRaster dst, double factor, boolean relative){
+		int w = src.getWidth(),
+			h = src.getHeight();
+
+		int m = size(kernel.width,  w),
+			n = size(kernel.height, h);
+
+		int bw = m - kernel.width  + 1,
+			bh = n - kernel.height + 1;
+
+		int cols = (w + bw - 1) / bw,
+			rows = (h + bh - 1) / bh;
+
+		double[][] acc = new double[src.getChannels() + (relative ? 1 : 0)][w*h];
+		double[][] spectrum = kernel.spectrum(m, n);
+
+		//Blocks of the same parity never overlap when added, so each of the four groups can run in parallel
+		for(int py=0; py<2; py++)
+		for(int px=0; px<2; px++){
+			int nx = (cols - px + 1) / 2,
+				ny = (rows - py + 1) / 2;
+
+			if(nx<=0 || ny<=0)
+				continue;
+
+			final int ox = px, oy = py;
+
+			TileExecutor.forEachTile(nx, ny, 1, 1, (i0,j0,i1,j1) -> {
+				for(int j=j0; j<j1; j++)
+				for(int i=i0; i<i1; i++)
+					block(kernel, src, acc, spectrum, m, n, (2*i+ox)*bw, (2*j+oy)*bh, bw, bh);
+			});
+		}
+
+		TileExecutor.forEachStrip(w, h, 16, (x0,y0,x1,y1) -> {
+			for(int c=0; c<src.getChannels(); c++){
+				double[] a = acc[c];
+				float[] d = dst.getPlane(c);
+
+				for(int y=y0; y<y1; y++)
+				for(int x=0; x<w; x++)
+					d[y*dst.getStride() + x] = (float) (a[y*w + x] * factor/(relative ? acc[acc.length-1][y*w + x] : 1));
+			}
+		});
+	}
+
+	private static void block(Kernel kernel, DRaster src, double[][] acc, double[][] spectrum, int m, int n, int x0, int y0, int bw, int bh){
+		int w = src.getWidth(),
+			h = src.getHeight(),
+			stride = src.getStride();
+
+		int cw = Math.min(bw, w - x0),
+			ch = Math.min(bh, h - y0);
+
+		//Offset from an index in the full convolution to the pixel it belongs to
+		int dx = 1 - kernel.originX - kernel.width,
+			dy = 1 - kernel.originY - kernel.height;
+
+		double[] re = new double[m*n],
+				 im = new double[m*n],
+				 tmpRe = new double[n],
+				 tmpIm = new double[n];
+
+		double[] sr = spectrum[0],
+				 si = spectrum[1];
+
+		double scale = 1.0 / (m*n);
+
+		FFT row = FFT.of(m),
+			col = FFT.of(n);
+
+		for(int a=0; a<acc.length; a+=2){
+			int b = a+1;
+
+			Arrays.fill(re, 0);
+			Arrays.fill(im, 0);
+
+			fill(src, a, acc.length, re, m, x0, y0, cw, ch, stride);
+			fill(src, b, acc.length, im, m, x0, y0, cw, ch, stride);
+
+			row.transform2D(col, re, im, tmpRe, tmpIm, false);
+
+			for(int i=0; i<m*n; i++){
+				double r = re[i]*sr[i] - im[i]*si[i];
+				im[i] = re[i]*si[i] + im[i]*sr[i];
+				re[i] = r;
+			}
+
+			row.transform2D(col, re, im, tmpRe, tmpIm, true);
+
+			for(int ly=0; ly<ch+kernel.height-1; ly++){
+				int y = y0 + ly + dy;
+				if(y<0 || y>=h)
+					continue;
+
+				for(int lx=0; lx<cw+kernel.width-1; lx++){
+					int x = x0 + lx + dx;
+					if(x<0 || x>=w)
+						continue;
+
+					acc[a][y*w + x] += re[ly*m + lx] * scale;
+					if(b<acc.length)
+						acc[b][y*w + x] += im[ly*m + lx] * scale;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Copies plane 'p' of a block into 'dst'. The plane after the last channel is a plane of ones, and anything beyond is left zero.
+	 */
+	private static void fill(DRaster src, int p, int planes, double[] dst, int m, int x0, int y0, int cw, int ch, int stride){
+		if(p >= planes)
+			return;
+
+		boolean ones = p >= src.getChannels();
+		float[] s = ones ? null : src.getPlane(p);
+
+		for(int y=0; y<ch; y++)
+		for(int x=0; x<cw; x++)
+			dst[y*m + x] = ones ? 1 : s[(y0+y)*stride + x0 + x];
+	}
+
+	/**
+	 * Picks the power-of-two transform length minimising the total transform work along one axis of the image.
+	 * Blocks must be at least k-1 wide (so blocks of equal parity never overlap), unless a single block covers the axis.
+	 */
+	private static int size(int k, int extent){
+		int single = FFT.nextPowerOfTwo(extent + k - 1);
+
+		int best = single;
+		double bestCost = single * log2(single);
+
+		for(int p=FFT.nextPowerOfTwo(2*k - 1); p<single; p<<=1){
+			int blocks = (extent + p - k) / (p - k + 1);
+			double cost = blocks * p * log2(p);
+
+			if(cost < bestCost){
+				best = p;
+				bestCost = cost;
+			}
+		}
+
+		return best;
+	}
+
+	private static double log2(int p){
+		return Math.max(1, Integer.numberOfTrailingZeros(p));
+	}
+}
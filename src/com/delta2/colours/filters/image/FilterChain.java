@@ -0,0 +1,303 @@
+package com.delta2.colours.filters.image;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import com.delta2.colours.DRaster;
+import com.delta2.colours.TileExecutor;
+import com.delta2.colours.colourspace.ColourSpace;
+
+/**
+ * A FilterChain applies a sequence of filters as a single filter.
+ * Runs of consecutive PointFilters are compiled into one pass over the image, in which every pixel is converted into
+ * a colour space only when the next filter does not support the space the pixel is already in,
+ * so e.g. hue shift -> saturation vignette -> noise reads and writes every pixel once and converts it to HSL once.
+ * Any other filter gets a pass of its own. The result is always in the colour space of the source image.
+ * @author ssodelta
+ *
+ */
+public class FilterChain implements DImageFilter {
+
+	/**
+	 * A run of point filters, or a single filter of any other kind.
+	 */
+	private static final class Stage {
+		final DImageFilter filter;
+		final PointFilter[] points;
+
+		Stage(DImageFilter filter){
+			this.filter = filter;
+			this.points = null;
+		}
+
+		Stage(List<PointFilter> run){
+			this.filter = null;
+			this.points = run.toArray(new PointFilter[0]);
+		}
+
+		/**
+		 * Chooses the colour space each point filter is run in, for pixels starting out in the colour space 'start'.
+		 */
+		ColourSpace[] plan(ColourSpace start){
+			ColourSpace[] spaces = new ColourSpace[points.length];
+			ColourSpace current = start;
+
+			for(int i=0; i<points.length; i++){
+				PointFilter f = points[i];
+
+				if(!f.supports(current)){
+					current = f.getColourSpace();
+
+					//Prefer a space the next filter can also use
+					if(i+1<points.length && points[i+1].getColourSpace()!=null && f.supports(points[i+1].getColourSpace()))
+						current = points[i+1].getColourSpace();
+				}
+
+				spaces[i] = current;
+			}
+
+			return spaces;
+		}
+	}
+
+	/**
+	 * The largest number of channels of any predefined colour space (CMYK).
+	 */
+	private static final int MAX_DIMENSIONS = 4;
+
+	private final List<DImageFilter> filters;
+	private final List<Stage> stages;
+
+	public FilterChain(List<? extends DImageFilter> filters){
+		this.filters = new ArrayList<DImageFilter>(filters);
+		this.stages  = new ArrayList<Stage>();
+
+		List<PointFilter> run = new ArrayList<PointFilter>();
+
+		for(DImageFilter f : this.filters){
+			if(f instanceof PointFilter){
+				run.add((PointFilter) f);
+				continue;
+			}
+
+			if(!run.isEmpty()){
+				stages.add(new Stage(run));
+				run.clear();
+			}
+
+			stages.add(new Stage(f));
+		}
+
+		if(!run.isEmpty())
+			stages.add(new Stage(run));
+	}
+
+	public FilterChain(DImageFilter... filters){
+		this(Arrays.asList(filters));
+	}
+
+	/**
+	 * @return The number of passes over the image this chain makes.
+	 */
+	public int getPasses(){
+		return stages.size();
+	}
+
+	/**
+	 * Point filters convert every pixel as they need to, so a chain only asks for the image in a particular colour space
+	 * when it contains other filters, in which case it asks for the colour space of the first of them.
+	 */
+	@Override
+	public ColourSpace getColourSpace(){
+		for(Stage stage : stages)
+			if(stage.filter != null)
+				return stage.filter.getColourSpace();
+
+		return null;
+	}
+
+	/**
+	 * A chain of point filters only filters the pixel on its own. Any other filter may read the whole image,
+	 * so then the whole chain is applied to the raster and the pixel is read back, which is slow:
+	 * use apply() or filter(src, dst, x0, y0, x1, y1) to filter more than a few pixels.
+	 */
+	@Override
+	public void filter(int x, int y, DRaster raster, float[] out){
+		if(isPointwise()){
+			Stage stage = stages.get(0);
+			ColourSpace cs = raster.getColourSpace();
+
+			double[] pixel = run(stage, stage.plan(cs), cs, x, y, raster, new double[3], new double[MAX_DIMENSIONS+1][]);
+
+			for(int c=0; c<out.length; c++)
+				out[c] = (float) pixel[c];
+			return;
+		}
+
+		DRaster whole = new DRaster(raster.getWidth(), raster.getHeight(), raster.getColourSpace());
+		apply(raster, whole);
+		whole.getPixel(x, y, out);
+	}
+
+	/**
+	 * Filters a tile with a single pass of the chain, rather than one pass per pixel when the chain is not made of point filters only.
+	 */
+	@Override
+	public void filter(DRaster src, DRaster dst, int x0, int y0, int x1, int y1){
+		float[] out = new float[src.getChannels()];
+
+		if(isPointwise()){
+			Stage stage = stages.get(0);
+			ColourSpace cs = src.getColourSpace();
+			ColourSpace[] spaces = stage.plan(cs);
+
+			double[]   rgb     = new double[3];
+			double[][] scratch = new double[MAX_DIMENSIONS+1][];
+
+			for(int y=y0; y<y1; y++)
+			for(int x=x0; x<x1; x++){
+				double[] pixel = run(stage, spaces, cs, x, y, src, rgb, scratch);
+
+				for(int c=0; c<out.length; c++)
+					out[c] = (float) pixel[c];
+				dst.setPixel(x, y, out);
+			}
+			return;
+		}
+
+		DRaster whole = new DRaster(src.getWidth(), src.getHeight(), src.getColourSpace());
+		apply(src, whole);
+
+		for(int y=y0; y<y1; y++)
+		for(int x=x0; x<x1; x++){
+			whole.getPixel(x, y, out);
+			dst.setPixel(x, y, out);
+		}
+	}
+
+	/**
+	 * @return Whether this chain is a single run of point filters, so every pixel can be filtered on its own.
+	 */
+	private boolean isPointwise(){
+		return stages.size()==1 && stages.get(0).points!=null;
+	}
+
+	/**
+	 * Applies every filter of this chain, leaving the result in 'dst' in the colour space of 'src'.
+	 */
+	@Override
+	public void apply(DRaster src, DRaster dst){
+		if(stages.isEmpty()){
+			dst.copyFrom(src);
+			return;
+		}
+
+		ColourSpace cs = src.getColourSpace();
+
+		DRaster tmp = stages.size() > 1 ? new DRaster(src.getWidth(), src.getHeight(), cs) : null;
+
+		//Ping-pong between dst and tmp, so the last stage always writes into dst
+		DRaster in  = src,
+				out = stages.size()%2 == 1 ? dst : tmp;
+
+		for(Stage stage : stages){
+			if(stage.points != null)
+				apply(stage, cs, in, out);
+			else if(stage.filter.supports(cs))
+				stage.filter.apply(in, out);
+			else
+				applyConverted(stage.filter, in, out);
+
+			in  = out;
+			out = out==dst ? tmp : dst;
+		}
+	}
+
+	/**
+	 * Applies a filter which does not support the colour space of 'src' to copies converted to its own colour space,
+	 * and converts the result back into 'dst'.
+	 */
+	private static void applyConverted(DImageFilter filter, DRaster src, DRaster dst){
+		DRaster in  = new DRaster(src).convertTo(filter.getColourSpace()),
+				out = new DRaster(src.getWidth(), src.getHeight(), filter.getColourSpace());
+
+		filter.apply(in, out);
+
+		dst.copyFrom(out.convertTo(src.getColourSpace()));
+	}
+
+	private static void apply(Stage stage, ColourSpace cs, DRaster src, DRaster dst){
+		ColourSpace[] spaces = stage.plan(cs);
+
+		TileExecutor.forEachTile(src.getWidth(), src.getHeight(), (x0,y0,x1,y1) -> {
+			double[]   rgb     = new double[3];
+			double[][] scratch = new double[MAX_DIMENSIONS+1][];
+
+			for(int y=y0; y<y1; y++)
+			for(int x=x0; x<x1; x++){
+				double[] pixel = run(stage, spaces, cs, x, y, src, rgb, scratch);
+
+				for(int c=0; c<dst.getChannels(); c++)
+					dst.set(c, x, y, (float) pixel[c]);
+			}
+		});
+	}
+
+	/**
+	 * Runs every filter of a stage on the pixel at (x, y), which is in the colour space 'cs', and returns its channels in 'cs'.
+	 * The pixel is kept in 'rgb' while it is in RGB, and in scratch[d] while it is in any other colour space with d channels,
+	 * so nothing is allocated per pixel.
+	 */
+	private static double[] run(Stage stage, ColourSpace[] spaces, ColourSpace cs, int x, int y, DRaster src, double[] rgb, double[][] scratch){
+		double[] pixel = buffer(cs, rgb, scratch);
+
+		for(int c=0; c<pixel.length; c++)
+			pixel[c] = src.get(c, x, y);
+
+		ColourSpace current = cs;
+
+		for(int i=0; i<stage.points.length; i++){
+			if(spaces[i] != current){
+				pixel   = convert(current, spaces[i], pixel, rgb, scratch);
+				current = spaces[i];
+			}
+
+			stage.points[i].filter(x, y, src.getWidth(), src.getHeight(), pixel);
+		}
+
+		if(current != cs)
+			pixel = convert(current, cs, pixel, rgb, scratch);
+
+		return pixel;
+	}
+
+	private static double[] convert(ColourSpace from, ColourSpace to, double[] pixel, double[] rgb, double[][] scratch){
+		if(from != ColourSpace.RGB)
+			from.toRGB(pixel, rgb);
+
+		double[] out = buffer(to, rgb, scratch);
+
+		if(to != ColourSpace.RGB)
+			to.fromRGB(rgb, out);
+
+		return out;
+	}
+
+	private static double[] buffer(ColourSpace cs, double[] rgb, double[][] scratch){
+		if(cs == ColourSpace.RGB)
+			return rgb;
+
+		int d = cs.getDimensions();
+
+		if(scratch[d] == null)
+			scratch[d] = new double[d];
+
+		return scratch[d];
+	}
+
+	@Override
+	public String toString(){
+		return filters.toString();
+	}
+}
@@ -1,9 +1,8 @@
 package com.delta2.colours.filters.image;
 
-import com.delta2.colours.Colour;
 import com.delta2.colours.colourspace.ColourSpace;
 
-public class HueShiftFilter implements DImageFilter {
+public class HueShiftFilter implements PointFilter {
 
 	private double dhue;
 	
@@ -11,10 +10,23 @@ public class HueShiftFilter implements DImageFilter {
 		this.dhue = hueChange/360;
 	}
 	
+	@Override
+	public ColourSpace getColourSpace(){
+		return ColourSpace.HSV;
+	}
+	
+	/**
+	 * Hue is defined the same way in HSV and HSL, and rotating it keeps both the maximum and minimum of R,G,B,
+	 * so shifting it gives the same colour in either space.
+	 */
+	@Override
+	public boolean supports(ColourSpace cs){
+		return cs==ColourSpace.HSV || cs==ColourSpace.HSL;
+	}
 	
 	@Override
-	public Colour filter(int x, int y, Colour[][] raster) {
-		return raster[x][y].convert(ColourSpace.HSV).add(dhue,0,0);
+	public void filter(int x, int y, int width, int height, double[] pixel) {
+		pixel[0] += dhue;
 	}
 
 }
@@ -0,0 +1,181 @@
+package com.delta2.colours.filters.image;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The result of analysing a convolution matrix once, so the per-pixel loops never have to look at the matrix itself.
+ * A Kernel keeps a list of the non-zero taps, and if the matrix is rank-1 (matrix[x][y] = col[x]*row[y]),
+ * the two 1-dimensional factors for separable convolution.
+ * @author ssodelta
+ *
+ */
+final class Kernel {
+
+	private static final double RANK_ONE_TOLERANCE = 1e-12;
+
+	final int width, height;
+
+	/**
+	 * The offset of the first column/row of the matrix relative to the pixel being filtered.
+	 */
+	final int originX, originY;
+
+	/**
+	 * Non-zero taps as offsets relative to the filtered pixel and their weights.
+	 */
+	final int[] tapX, tapY;
+	final double[] tapWeight;
+
+	/**
+	 * Bounding box of the non-zero taps, relative to the filtered pixel.
+	 */
+	final int minX, maxX, minY, maxY;
+
+	final double sum;
+
+	/**
+	 * The horizontal and vertical factors if the matrix is rank-1, null otherwise.
+	 */
+	final double[] col, row;
+
+	private final ConcurrentHashMap<Long, double[][]> spectra = new ConcurrentHashMap<Long, double[][]>();
+
+	Kernel(double[][] matrix){
+		if(matrix==null || matrix.length==0 || matrix[0].length==0)
+			throw new IllegalArgumentException("Error, the convolution matrix must not be empty.");
+
+		width  = matrix.length;
+		height = matrix[0].length;
+
+		originX = -(width/2);
+		originY = -(height/2);
+
+		int n = 0;
+		double s = 0, max = 0;
+		int px = 0, py = 0;
+
+		for(int x=0; x<width;  x++)
+		for(int y=0; y<height; y++){
+			double v = matrix[x][y];
+			s += v;
+
+			if(v != 0)
+				n++;
+
+			if(Math.abs(v) > max){
+				max = Math.abs(v);
+				px  = x;
+				py  = y;
+			}
+		}
+
+		sum = s;
+
+		tapX      = new int[n];
+		tapY      = new int[n];
+		tapWeight = new double[n];
+
+		int k = 0,
+			x0 = Integer.MAX_VALUE, x1 = Integer.MIN_VALUE,
+			y0 = Integer.MAX_VALUE, y1 = Integer.MIN_VALUE;
+
+		for(int y=0; y<height; y++)
+		for(int x=0; x<width;  x++){
+			if(matrix[x][y] == 0)
+				continue;
+
+			tapX[k]      = originX + x;
+			tapY[k]      = originY + y;
+			tapWeight[k] = matrix[x][y];
+
+			x0 = Math.min(x0, tapX[k]);
+			x1 = Math.max(x1, tapX[k]);
+			y0 = Math.min(y0, tapY[k]);
+			y1 = Math.max(y1, tapY[k]);
+			k++;
+		}
+
+		if(n==0){
+			x0 = x1 = y0 = y1 = 0;
+		}
+
+		minX = x0; maxX = x1;
+		minY = y0; maxY = y1;
+
+		double[] c = null, r = null;
+
+		if(max > 0){
+			c = new double[width];
+			r = new double[height];
+
+			for(int x=0; x<width;  x++)
+				c[x] = matrix[x][py];
+
+			for(int y=0; y<height; y++)
+				r[y] = matrix[px][y] / matrix[px][py];
+
+			check:
+			for(int x=0; x<width;  x++)
+			for(int y=0; y<height; y++)
+				if(Math.abs(matrix[x][y] - c[x]*r[y]) > RANK_ONE_TOLERANCE*max){
+					c = r = null;
+					break check;
+				}
+		}
+
+		col = c;
+		row = r;
+	}
+
+	boolean isSeparable(){
+		return col != null;
+	}
+
+	/**
+	 * @return The number of multiply-adds per pixel when convolving directly with the tap list.
+	 */
+	int directCost(){
+		return tapWeight.length;
+	}
+
+	/**
+	 * @return The number of multiply-adds per pixel when convolving with the two separable passes.
+	 */
+	int separableCost(){
+		int n = 0;
+
+		for(double v : col) if(v != 0) n++;
+		for(double v : row) if(v != 0) n++;
+
+		return n;
+	}
+
+	/**
+	 * Returns the 2-dimensional spectrum of the flipped kernel, zero-padded to m x n (both powers of two).
+	 * Spectra are cached per size, so every tile of every image convolved at this size shares one transform.
+	 * @return The real and imaginary parts, stored row by row.
+	 */
+	double[][] spectrum(int m, int n){
+		Long key = ((long) m << 32) | n;
+		double[][] s = spectra.get(key);
+
+		if(s==null){
+			double[] re = new double[m*n],
+					 im = new double[m*n];
+
+			for(int k=0; k<tapWeight.length; k++){
+				int x = width  - 1 - (tapX[k] - originX),
+					y = height - 1 - (tapY[k] - originY);
+
+				re[y*m + x] = tapWeight[k];
+			}
+
+			FFT.of(m).transform2D(FFT.of(n), re, im, new double[n], new double[n], false);
+
+			s = new double[][]{re, im};
+			spectra.putIfAbsent(key, s);
+		}
+
+		return s;
+	}
+}
@@ -1,18 +1,90 @@
 package com.delta2.colours.filters.image;
 
+import com.delta2.colours.DRaster;
+import com.delta2.colours.TileExecutor;
+
+/**
+ * Replaces every pixel by the average of the size x size box around it (clipped at the image border).
+ * The box sums are read from a summed-area table, so the cost per pixel does not depend on the size.
+ * @author ssodelta
+ *
+ */
 public class MeanFilter extends ConvolutionFilter {
 
+	private final int size;
+
 	public MeanFilter(int size){
 		super(getFilter(size));
+		this.size = size;
 	}
 
 	private static double[][] getFilter(int size){
+		if(size<1)
+			throw new IllegalArgumentException("Error, the size must be a positive integer.");
+
 		double[][] matrix = new double[size][size];
 
 		for(int x=0; x<size; x++)
 		for(int y=0; y<size; y++)
 			matrix[x][y]=1;
-		
+
 		return matrix;
 	}
+
+	@Override
+	public void apply(DRaster src, DRaster dst){
+		int w = src.getWidth(),
+			h = src.getHeight(),
+			n = w+1;
+
+		//sat[y*n + x] is the sum of all pixels in [0; x) x [0; y)
+		double[] sat = new double[n*(h+1)];
+
+		for(int c=0; c<src.getChannels(); c++){
+			float[] s = src.getPlane(c),
+					d = dst.getPlane(c);
+
+			TileExecutor.forEachStrip(w, h, STRIP_HEIGHT, (x0,y0,x1,y1) -> {
+				for(int y=y0; y<y1; y++){
+					double sum = 0;
+					int row = (y+1)*n,
+						in  = y*src.getStride();
+
+					for(int x=0; x<w; x++){
+						sum += s[in + x];
+						sat[row + x + 1] = sum;
+					}
+				}
+			});
+
+			TileExecutor.forEachTile(n, h+1, STRIP_WIDTH, h+1, (x0,y0,x1,y1) -> {
+				for(int y=1; y<=h; y++)
+				for(int x=x0; x<x1; x++)
+					sat[y*n + x] += sat[(y-1)*n + x];
+			});
+
+			TileExecutor.forEachStrip(w, h, STRIP_HEIGHT, (x0,y0,x1,y1) -> {
+				for(int y=y0; y<y1; y++){
+					int top    = Math.max(0, y - size/2),
+						bottom = Math.min(h, y - size/2 + size);
+
+					int r0 = top*n,
+						r1 = bottom*n,
+						out = y*dst.getStride();
+
+					for(int x=0; x<w; x++){
+						int left  = Math.max(0, x - size/2),
+							right = Math.min(w, x - size/2 + size);
+
+						double sum = sat[r1 + right] - sat[r1 + left] - sat[r0 + right] + sat[r0 + left];
+
+						d[out + x] = (float) (sum / ((right-left)*(bottom-top)));
+					}
+				}
+			});
+		}
+	}
+
+	private static final int STRIP_HEIGHT = 16,
+							 STRIP_WIDTH  = 256;
 }
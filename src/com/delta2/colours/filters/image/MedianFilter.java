@@ -1,78 +1,301 @@
 package com.delta2.colours.filters.image;
 
-import java.util.ArrayList;
-import java.util.Collections;
-import java.util.List;
-
-import com.delta2.colours.Colour;
+import java.util.Arrays;
 
+import com.delta2.colours.DRaster;
+import com.delta2.colours.TileExecutor;
 
+/**
+ * Replaces every pixel by the per-channel median of the size x size box around it (clipped at the image border).
+ * When the box holds an even number of pixels, the two middle values are averaged.
+ *
+ * By default every channel is quantised to LEVELS levels, and the medians are found with the constant-time algorithm
+ * of Perreault and Hebert: each row strip keeps one histogram per column, and the histogram of the box is updated
+ * by adding and removing whole column histograms as it slides, with a coarse level of 16 bins and a lazily updated
+ * fine level of 16 bins per coarse bin.
+ * A channel whose values are all 8-bit values (i/255 for an integer i in [0; 255], as read from 8-bit files)
+ * is filtered exactly, as every 8-bit value gets its own level. Any other channel is quantised to LEVELS levels
+ * between its minimum and maximum value in the image, so the result may be off by half a level,
+ * and the exact mode sorts the actual float values of every box instead.
+ * Boxes of 3x3 or less are always sorted exactly, as that is cheaper than maintaining the histograms.
+ * @author ssodelta
+ *
+ */
 public class MedianFilter implements DImageFilter {
 
+	/**
+	 * The number of levels every channel is quantised to.
+	 */
+	public static final int LEVELS = 256;
+
+	private static final int COARSE = 16,
+							 FINE   = LEVELS / COARSE,
+							 STRIP_HEIGHT = 64,
+							 EXACT_SIZE   = 3;
+
 	private final int size;
-	
+	private final boolean exact;
+
+	/**
+	 * Constructs a new MedianFilter.
+	 * @param size The width and height of the box.
+	 * @param exact Find the exact median of the float values instead of the quantised median (much slower for large sizes).
+	 */
+	public MedianFilter(int size, boolean exact){
+		if(size<1)
+			throw new IllegalArgumentException("Error, the size must be a positive integer.");
+
+		this.size  = size;
+		this.exact = exact;
+	}
+
 	public MedianFilter(int size){
-		this.size = size;
+		this(size, false);
 	}
-	
+
 	@Override
-	public Colour filter(int x, int y, Colour[][] raster) {
-		
-		if(raster==null || raster.length==0 || raster[0].length==0)
+	public void filter(int x, int y, DRaster raster, float[] out) {
+		filter(x, y, raster, out, new float[size*size]);
+	}
+
+	private void filter(int x, int y, DRaster raster, float[] out, float[] window) {
+
+		if(raster==null)
 			throw new IllegalArgumentException("Error: empty raster detected");
-		
-		Colour sample = raster[0][0];
-		int n = sample.getDimensions();
-		
-		@SuppressWarnings("unchecked")
-		List<Double>[] channels = (List<Double>[]) new List[n];
-		
-		for(int i=0; i<n; i++)
-			channels[i] = new ArrayList<Double>();
-
-		int imageWidth  = raster.length,
-			imageHeight = raster[0].length;
-		
-		for(int filterX=0; filterX<size; filterX++)
-		for(int filterY=0; filterY<size; filterY++){
-			int imageX = x - size/2 + filterX,
-				imageY = y - size/2 + filterY;
-				
-				if(imageX < 0 || imageY < 0 || imageX>=imageWidth || imageY>=imageHeight)
-					continue;
-				
-				Colour col = raster[imageX][imageY];
-				double[] data = col.getData();
-				
-				if(col.getClass() != sample.getClass())
-					throw new IllegalArgumentException("Error: raster must only contain colors of same subclass. Expected "+sample.getClass()+" but got "+col.getClass()+" instead.");
-				
-				if(data.length != n)
-					throw new IllegalArgumentException("Error: raster must only contain colors of same dimensionality. Expected "+n+" but got "+data.length+" instead.");
-				
-				for(int i=0; i<n;i++)
-					channels[i].add(data[i]);
-		}
-		
-		for(int i=0; i<n; i++)
-			Collections.sort(channels[i]);
-		
-		double[] finalColor = new double[n];
-		
-		for(int i=0; i<n; i++){
-			
-			int s = channels[i].size();
-			
-			if(s==0)continue;
-			
+
+		int imageWidth  = raster.getWidth(),
+			imageHeight = raster.getHeight();
+
+		int x0 = Math.max(0, x - size/2), x1 = Math.min(imageWidth,  x - size/2 + size),
+			y0 = Math.max(0, y - size/2), y1 = Math.min(imageHeight, y - size/2 + size);
+
+		for(int c=0; c<out.length; c++){
+			float[] plane = raster.getPlane(c);
+			int s = 0;
+
+			for(int imageY=y0; imageY<y1; imageY++)
+			for(int imageX=x0; imageX<x1; imageX++)
+				window[s++] = plane[raster.index(imageX, imageY)];
+
+			if(s==0){
+				out[c] = 0;
+				continue;
+			}
+
+			Arrays.sort(window, 0, s);
+
 			if(s%2 == 0)
-				finalColor[i] = (channels[i].get(s/2-1) + channels[i].get(s/2))/2;
+				out[c] = (window[s/2-1] + window[s/2])/2;
 			else
-				finalColor[i] = channels[i].get(s/2);
-			
+				out[c] = window[s/2];
+		}
+	}
+
+	@Override
+	public void filter(DRaster src, DRaster dst, int x0, int y0, int x1, int y1){
+		float[] out    = new float[src.getChannels()],
+				window = new float[size*size];
+
+		for(int y=y0; y<y1; y++)
+		for(int x=x0; x<x1; x++){
+			filter(x, y, src, out, window);
+			dst.setPixel(x, y, out);
+		}
+	}
+
+	@Override
+	public void apply(DRaster src, DRaster dst){
+		if(exact || size <= EXACT_SIZE){
+			DImageFilter.super.apply(src, dst);
+			return;
+		}
+
+		int w = src.getWidth(),
+			h = src.getHeight();
+
+		byte[] q = new byte[w*h];
+		float[] levels = new float[LEVELS];
+
+		for(int c=0; c<src.getChannels(); c++){
+			quantise(src, c, q, levels);
+
+			float[] d = dst.getPlane(c);
+
+			TileExecutor.forEachStrip(w, h, Math.max(STRIP_HEIGHT, size), (x0,y0,x1,y1) ->
+				strip(q, w, h, y0, y1, d, dst.getStride(), levels)
+			);
+		}
+	}
+
+	/**
+	 * Quantises one channel of 'src' into 'q' (row by row, without stride), and stores the value of every level in 'levels'.
+	 * The levels are the 8-bit values if every sample is one, and evenly spaced between the minimum and maximum otherwise.
+	 */
+	private static void quantise(DRaster src, int c, byte[] q, float[] levels){
+		int w = src.getWidth(),
+			h = src.getHeight();
+
+		float[] s = src.getPlane(c);
+
+		float min = Float.POSITIVE_INFINITY,
+			  max = Float.NEGATIVE_INFINITY;
+
+		boolean bytes = true;
+
+		for(int y=0; y<h; y++)
+		for(int x=0; x<w; x++){
+			float v = s[y*src.getStride() + x];
+			if(v<min) min = v;
+			if(v>max) max = v;
+
+			if(bytes)
+				bytes = v >= 0 && v <= 1 && Math.round(v*255) / 255f == v;
+		}
+
+		if(bytes){
+			for(int i=0; i<LEVELS; i++)
+				levels[i] = i / 255f;
+
+			TileExecutor.forEachStrip(w, h, STRIP_HEIGHT, (x0,y0,x1,y1) -> {
+				for(int y=y0; y<y1; y++)
+				for(int x=0; x<w; x++)
+					q[y*w + x] = (byte) Math.round(s[y*src.getStride() + x] * 255);
+			});
+
+			return;
 		}
-		
-		return Colour.fromColourSpace(sample.getColourSpace(), finalColor);
+
+		if(!(max > min))
+			max = min;
+
+		double range = max - min,
+			   scale = range == 0 ? 0 : (LEVELS-1) / range;
+
+		for(int i=0; i<LEVELS; i++)
+			levels[i] = (float) (min + i*range/(LEVELS-1));
+
+		final float lo = min;
+
+		TileExecutor.forEachStrip(w, h, STRIP_HEIGHT, (x0,y0,x1,y1) -> {
+			for(int y=y0; y<y1; y++)
+			for(int x=0; x<w; x++){
+				long l = Math.round((s[y*src.getStride() + x] - lo) * scale);
+				q[y*w + x] = (byte) Math.max(0, Math.min(LEVELS-1, l));
+			}
+		});
+	}
+
+	/**
+	 * Computes the medians of the rows [y0; y1) of one quantised channel.
+	 */
+	private void strip(byte[] q, int w, int h, int y0, int y1, float[] dst, int stride, float[] levels){
+		int lo = size/2,
+			hi = size - 1 - size/2;
+
+		int[] colFine   = new int[w*LEVELS],
+			  colCoarse = new int[w*COARSE];
+
+		int[] fine   = new int[LEVELS],
+			  coarse = new int[COARSE],
+			  synced = new int[COARSE];
+
+		//Column histograms of the rows [y0-lo-1; y0+hi), so the first row can slide like every other
+		for(int y=Math.max(0, y0-lo-1); y<Math.min(h, y0+hi); y++)
+			for(int x=0; x<w; x++)
+				addColumn(colFine, colCoarse, x, q[y*w + x] & 0xFF, 1);
+
+		for(int y=y0; y<y1; y++){
+			int rOut = y-lo-1,
+				rIn  = y+hi;
+
+			for(int x=0; x<w; x++){
+				if(rOut >= 0)
+					addColumn(colFine, colCoarse, x, q[rOut*w + x] & 0xFF, -1);
+				if(rIn < h)
+					addColumn(colFine, colCoarse, x, q[rIn*w + x] & 0xFF, 1);
+			}
+
+			int rows = Math.min(h, y+hi+1) - Math.max(0, y-lo);
+
+			Arrays.fill(coarse, 0);
+			Arrays.fill(synced, -size-1);
+
+			for(int x=0; x<Math.min(w, hi); x++)
+				for(int b=0; b<COARSE; b++)
+					coarse[b] += colCoarse[x*COARSE + b];
+
+			for(int x=0; x<w; x++){
+				int cOut = x-lo-1,
+					cIn  = x+hi;
+
+				for(int b=0; b<COARSE; b++){
+					if(cOut >= 0)
+						coarse[b] -= colCoarse[cOut*COARSE + b];
+					if(cIn < w)
+						coarse[b] += colCoarse[cIn*COARSE + b];
+				}
+
+				int n = rows * (Math.min(w, x+hi+1) - Math.max(0, x-lo));
+
+				float m = levels[select(n/2, x, w, lo, hi, colFine, fine, coarse, synced)];
+
+				if(n%2 == 0)
+					m = (levels[select(n/2-1, x, w, lo, hi, colFine, fine, coarse, synced)] + m)/2;
+
+				dst[y*stride + x] = m;
+			}
+		}
+	}
+
+	private static void addColumn(int[] colFine, int[] colCoarse, int x, int level, int delta){
+		colFine[x*LEVELS + level]           += delta;
+		colCoarse[x*COARSE + level / FINE]  += delta;
+	}
+
+	/**
+	 * Finds the level of the k'th smallest (0-based) value in the box centered at column x,
+	 * bringing the fine histogram of the coarse bin it falls into up to date with column x first.
+	 */
+	private static int select(int k, int x, int w, int lo, int hi, int[] colFine, int[] fine, int[] coarse, int[] synced){
+		int b = 0;
+
+		while(k >= coarse[b] && b<COARSE-1)
+			k -= coarse[b++];
+
+		int base = b*FINE;
+
+		if(synced[b] != x){
+			if(x - synced[b] > lo+hi+1){
+				//Rebuild from scratch
+				Arrays.fill(fine, base, base+FINE, 0);
+
+				for(int xx=Math.max(0, x-lo); xx<Math.min(w, x+hi+1); xx++)
+					for(int i=0; i<FINE; i++)
+						fine[base+i] += colFine[xx*LEVELS + base + i];
+			} else {
+				//Slide from the column this bin was last synced to
+				for(int xx=synced[b]+1; xx<=x; xx++){
+					int cOut = xx-lo-1,
+						cIn  = xx+hi;
+
+					for(int i=0; i<FINE; i++){
+						if(cOut >= 0)
+							fine[base+i] -= colFine[cOut*LEVELS + base + i];
+						if(cIn < w)
+							fine[base+i] += colFine[cIn*LEVELS + base + i];
+					}
+				}
+			}
+
+			synced[b] = x;
+		}
+
+		int i = base;
+
+		while(k >= fine[i] && i<base+FINE-1)
+			k -= fine[i++];
+
+		return i;
 	}
 
 }
@@ -1,31 +1,48 @@
 package com.delta2.colours.filters.image;
 
-import com.delta2.colours.Colour;
-import com.delta2.colours.ColourUtil;
+import com.delta2.colours.colourspace.ColourSpace;
 
-public class NoiseFilter implements DImageFilter {
+/**
+ * Adds uniform noise in [-noise; noise] to every channel.
+ * The noise is a hash of the seed and the pixel position rather than a shared random generator,
+ * so the result is the same no matter how many threads are used to filter the image.
+ * The noise is added in whatever colour space the pixel is in.
+ * @author ssodelta
+ *
+ */
+public class NoiseFilter implements PointFilter {
 
 	private double maxNoise;
+	private long seed;
 	
-	public NoiseFilter(double noise){
+	public NoiseFilter(double noise, long seed){
 		this.maxNoise = noise;
+		this.seed     = seed;
+	}
+	
+	public NoiseFilter(double noise){
+		this(noise, (long)(Math.random()*Long.MAX_VALUE));
 	}
 
-	private double rand(){
-		return maxNoise*ColourUtil.rand();
+	private double rand(int x, int y, int c){
+		long h = seed + 0x9E3779B97F4A7C15L * (((long)y << 32 | (x & 0xFFFFFFFFL)) * 4 + c + 1);
+		
+		h = (h ^ (h >>> 30)) * 0xBF58476D1CE4E5B9L;
+		h = (h ^ (h >>> 27)) * 0x94D049BB133111EBL;
+		h =  h ^ (h >>> 31);
+		
+		return maxNoise*((h >>> 11) * 0x1.0p-52 - 1);
 	}
 	
-	private double[] rand(int size){
-		double[] d = new double[size];
-		for(int i=0; i<size; i++)
-			d[i]=rand();
-		return d;
+	@Override
+	public ColourSpace getColourSpace(){
+		return null;
 	}
 	
 	@Override
-	public Colour filter(int x, int y, Colour[][] raster) {
-		Colour col = raster[x][y];
-		return col.add(rand(col.getDimensions()));
+	public void filter(int x, int y, int width, int height, double[] pixel) {
+		for(int c=0; c<pixel.length; c++)
+			pixel[c] += rand(x, y, c);
 	}
 	
 	
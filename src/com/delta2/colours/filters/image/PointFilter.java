@@ -0,0 +1,56 @@
+package com.delta2.colours.filters.image;
+
+import com.delta2.colours.DRaster;
+import com.delta2.colours.colourspace.ColourSpace;
+
+/**
+ * A PointFilter is a filter whose result for a pixel only depends on that pixel (and its position),
+ * and which works in one particular colour space. This lets a FilterChain run several point filters in a single pass,
+ * converting every pixel only when the colour space actually changes.
+ * @author ssodelta
+ *
+ */
+public interface PointFilter extends DImageFilter {
+
+	/**
+	 * @return The colour space filter() expects its pixel in, or null if it works in any colour space.
+	 */
+	@Override
+	public ColourSpace getColourSpace();
+	
+	/**
+	 * Apply this filter to a single pixel in place.
+	 * @param x The x-coordinate of the pixel.
+	 * @param y The y-coordinate of the pixel.
+	 * @param width The width of the image.
+	 * @param height The height of the image.
+	 * @param pixel The channels of the pixel in getColourSpace().
+	 */
+	public void filter(int x, int y, int width, int height, double[] pixel);
+	
+	/**
+	 * Filters a single pixel of a raster in any colour space. If this filter does not support the colour space of the raster,
+	 * the pixel is converted to getColourSpace() and back.
+	 */
+	@Override
+	public default void filter(int x, int y, DRaster raster, float[] out){
+		PointFilters.filter(this, x, y, raster, out, new double[out.length], new double[3], PointFilters.pixel(this, raster));
+	}
+	
+	/**
+	 * Filters a tile like filter(x, y, raster, out) does every pixel, with buffers allocated once per tile instead of once per pixel.
+	 */
+	@Override
+	public default void filter(DRaster src, DRaster dst, int x0, int y0, int x1, int y1){
+		float[]  out   = new float[src.getChannels()];
+		double[] data  = new double[out.length],
+				 rgb   = new double[3],
+				 pixel = PointFilters.pixel(this, src);
+		
+		for(int y=y0; y<y1; y++)
+		for(int x=x0; x<x1; x++){
+			PointFilters.filter(this, x, y, src, out, data, rgb, pixel);
+			dst.setPixel(x, y, out);
+		}
+	}
+}
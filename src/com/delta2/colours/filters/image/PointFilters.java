@@ -0,0 +1,47 @@
+package com.delta2.colours.filters.image;
+
+import com.delta2.colours.DRaster;
+import com.delta2.colours.colourspace.ColourSpace;
+
+/**
+ * The body of the default methods of PointFilter, which works on buffers supplied by the caller
+ * so a whole tile can be filtered without allocating per pixel.
+ * @author ssodelta
+ *
+ */
+final class PointFilters {
+
+	private PointFilters(){}
+
+	/**
+	 * @return A buffer for a pixel in the colour space of 'f', or null if 'f' supports the colour space of 'raster'.
+	 */
+	static double[] pixel(PointFilter f, DRaster raster){
+		return f.supports(raster.getColourSpace()) ? null : new double[f.getColourSpace().getDimensions()];
+	}
+
+	/**
+	 * Filters the pixel at (x, y) of 'raster' into 'out', using 'data' (with as many channels as 'out'), 'rgb' and 'pixel'
+	 * (from pixel()) as scratch space.
+	 */
+	static void filter(PointFilter f, int x, int y, DRaster raster, float[] out, double[] data, double[] rgb, double[] pixel){
+		for(int c=0; c<out.length; c++)
+			data[c] = raster.get(c, x, y);
+
+		if(pixel == null){
+			f.filter(x, y, raster.getWidth(), raster.getHeight(), data);
+		} else {
+			ColourSpace from = raster.getColourSpace(),
+						cs   = f.getColourSpace();
+
+			from.toRGB(data, rgb);
+			cs.fromRGB(rgb, pixel);
+			f.filter(x, y, raster.getWidth(), raster.getHeight(), pixel);
+			cs.toRGB(pixel, rgb);
+			from.fromRGB(rgb, data);
+		}
+
+		for(int c=0; c<out.length; c++)
+			out[c] = (float) data[c];
+	}
+}
@@ -1,9 +1,8 @@
 package com.delta2.colours.filters.image;
 
-import com.delta2.colours.Colour;
 import com.delta2.colours.colourspace.ColourSpace;
 
-public abstract class VignetteFilter implements DImageFilter {
+public abstract class VignetteFilter implements PointFilter {
 
 	private int channel;
 	private double exp;
@@ -14,12 +13,13 @@ public abstract class VignetteFilter implements DImageFilter {
 	}
 	
 	@Override
-	public Colour filter(int x, int y, Colour[][] raster) {
-
-		int w  = raster.length,
-			h  = raster[0].length;
-		
-		return raster[x][y].convert(ColourSpace.HSL).set(channel, vignette(x,y,w,h));
+	public ColourSpace getColourSpace(){
+		return ColourSpace.HSL;
+	}
+	
+	@Override
+	public void filter(int x, int y, int width, int height, double[] pixel) {
+		pixel[channel] = vignette(x, y, width, height);
 	}
 	
 	private double vignette(int x, int y, int w, int h){
@@ -1,26 +1,45 @@
 package com.delta2.colours.generation;
 
-import java.awt.image.BufferedImage;
-import java.io.File;
+import static java.nio.file.StandardOpenOption.CREATE;
+import static java.nio.file.StandardOpenOption.TRUNCATE_EXISTING;
+import static java.nio.file.StandardOpenOption.WRITE;
+
 import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
 import java.time.LocalDateTime;
-
-import javax.imageio.stream.FileImageOutputStream;
-import javax.imageio.stream.ImageOutputStream;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 
 import com.delta2.colours.Animation;
+import com.delta2.colours.AnimationStream;
 import com.delta2.colours.BlendMode;
 import com.delta2.colours.Colour;
 import com.delta2.colours.ColourUtil;
 import com.delta2.colours.DImage;
 import com.delta2.colours.DImageIO;
-import com.delta2.thirdparty.GIFSequenceWriter;
+import com.delta2.colours.DRaster;
+import com.delta2.colours.FrameStore;
+import com.delta2.colours.gif.GIFEncoder;
+import com.delta2.colours.gif.Palette;
+import com.delta2.colours.gif.Quantiser;
 
 public abstract class Generator {
 
 	private long begin;
 	
 	private int width, height;
+	
 
 	
 	protected Generator(int width, int height){
@@ -35,26 +54,94 @@ public abstract class Generator {
 			 + "]: ";
 	}
 	
+	/**
+	 * Returns the frame at time t as a grid of Colour objects, indexed [x][y].
+	 * This calls generate() once per pixel; renderRaster() is the faster way to get a frame.
+	 * @param t The time variable (in the interval [0, 1]).
+	 */
 	public Colour[][] generateRaster(double t){
 		Colour[][] raster = new Colour[width][height];
-		
 		int max = Math.max(width, height);
-		
 		for(int xx=0; xx<width;  xx++)
 		for(int yy=0; yy<height; yy++)
 			raster[xx][yy] = generate((double)xx/(double)(max-1), (double)(yy)/(double)(max-1), t);
-
+		return raster;
+	}
+	
+	/**
+	 * Renders the frame at time t into a packed RGB raster, a row at a time through getRows().
+	 * @param t The time variable (in the interval [0, 1]).
+	 */
+	public DRaster renderRaster(double t){
+		DRaster raster = new DRaster(width, height, 3);
+		
+		int max = Math.max(width, height);
+		
+		double[] nx = new double[width];
+		
+		for(int xx=0; xx<width; xx++)
+			nx[xx] = (double)xx/(double)(max-1);
+		
+		RowGenerator rows = getRows(t);
+		
+		for(int yy=0; yy<height; yy++)
+			rows.generateRow(raster, yy, (double)(yy)/(double)(max-1), nx, 0, width);
 		
 		return raster;
 	}
 	
+	/**
+	 * Escape-time generators, whose colours only depend on a small integer key, may override this to describe
+	 * the frame at time t as a KeyedFrame, whose keys are computed a row at a time and then coloured.
+	 * Frames are rendered concurrently by exportAnimation(), so this must be safe to call from several threads at once.
+	 * @param t The time variable (in the interval [0, 1]).
+	 * @return The frame at time t, or null if this generator does not use keys.
+	 */
+	protected KeyedFrame getKeyedFrame(double t){
+		return null;
+	}
+	
+	/**
+	 * Returns the RowGenerator which fills the rows of the frame at time t.
+	 * By default every pixel is generated from the KeyedFrame at time t if there is one, and by a call to generate() otherwise,
+	 * but subclasses may override this to compute whatever only depends on t once per frame,
+	 * and to write channel values straight into the raster.
+	 * Frames are rendered concurrently by exportAnimation(), so this must be safe to call from several threads at once.
+	 * @param t The time variable (in the interval [0, 1]).
+	 */
+	protected RowGenerator getRows(double t){
+		KeyedFrame keyed = getKeyedFrame(t);
+		
+		if(keyed != null)
+			return (raster, y, ny, nx, x0, x1) -> {
+				double[] rgb = new double[3];
+				int[] keys = new int[x1-x0];
+				
+				keyed.keys(nx, x0, x1, ny, keys);
+				
+				for(int x=x0; x<x1; x++){
+					keyed.colour(keys[x-x0], rgb);
+					
+					int i = raster.index(x, y);
+					
+					for(int c=0; c<3; c++)
+						raster.getPlane(c)[i] = (float) rgb[c];
+				}
+			};
+		
+		return (raster, y, ny, nx, x0, x1) -> {
+			for(int x=x0; x<x1; x++)
+				raster.setColour(x, y, generate(nx[x], ny, t));
+		};
+	}
+	
 	public DImage generateImage(String tag, double t){
 		DImage img = generateImage(t);
 		return tag.isEmpty() ? img : ColourUtil.writeToImage(img, tag);
 	}
 	
 	public DImage generateImage(double t){
-		return new DImage(generateRaster(t));
+		return new DImage(renderRaster(t));
 	}
 	
 	public DImage generateImage(){
@@ -62,44 +149,219 @@ public abstract class Generator {
 	}
 
 	
+	/**
+	 * Renders an animation and writes it directly into a .gif file, using one worker thread per available processor.
+	 * @see #exportAnimation(String, String, int, int, boolean, int)
+	 */
 	public void exportAnimation(String filename, String tag, int images, int fps, boolean print) throws IOException{
+		exportAnimation(filename, tag, images, fps, print, Runtime.getRuntime().availableProcessors());
+	}
+	
+	/**
+	 * Renders an animation and writes it directly into a .gif file.
+	 * Every frame is blended onto the previous (blended) frame with SOFT_LIGHT, and the first frame is also written to a _sample file.
+	 * 
+	 * The export is a pipeline of three stages: 'threads' workers render frames out of order,
+	 * the calling thread blends them in order, and a separate thread encodes the blended frames,
+	 * handing the compression of every frame back to the workers.
+	 * The stages are connected by bounded queues, so only a few frames per worker are held in memory at any time.
+	 * All frames share one palette, which is built up front from a few frames spread over the animation.
+	 * Since only the rendering is done out of order, the file is the same no matter how many threads are used,
+	 * as long as generate() is thread-safe.
+	 * @param threads The number of worker threads rendering frames.
+	 */
+	public void exportAnimation(String filename, String tag, int images, int fps, boolean print, int threads) throws IOException{
 		if(images<1)
 			throw new RuntimeException("Empty animation");
+		if(threads<1)
+			throw new IllegalArgumentException("Error, the number of threads must be a positive integer.");
 		
-		ImageOutputStream outStream = new FileImageOutputStream(new File(filename));
-		GIFSequenceWriter gifWriter = null;
-		DImage prev = null;
-
-		for(int i=0; i<images; i++){
-			if(print)tag(i,images,tag);
-			DImage img = generateImage(tag, (double)i/(double)(images-1));
+		ExecutorService workers = Executors.newFixedThreadPool(threads),
+						encoder = Executors.newSingleThreadExecutor();
+		
+		try {
+			//Render the frames the palette is built from first, and keep them until it is their turn to be blended
+			Map<Integer, Future<DImage>> sampled = new LinkedHashMap<Integer, Future<DImage>>();
+			int samples = Math.min(images, PALETTE_FRAMES);
 			
-			if(prev!=null){
-				prev.setAlpha(0.825);
-				img.blend(prev, BlendMode.SOFT_LIGHT);
-				img.setAlpha(1.0);
+			for(int k=0; k<samples; k++){
+				int i = samples==1 ? 0 : k*(images-1)/(samples-1);
+				sampled.put(i, render(workers, tag, i, images));
 			}
 			
-			prev = new DImage(img);
+			int[][] pixels = new int[samples][];
+			int k = 0;
+			for(Future<DImage> f : sampled.values())
+				pixels[k++] = await(f).toPackedRGB();
 			
-			if(i==0){
-				String newFilename = filename.substring(0,filename.lastIndexOf(".")) + "_sample" + filename.substring(filename.lastIndexOf("."));
-				DImageIO.write(img, newFilename);
-			}
-			
-			if(gifWriter==null)
-				gifWriter = new GIFSequenceWriter(outStream, BufferedImage.TYPE_INT_RGB, 1000/fps, true);
+			Palette palette = Quantiser.OCTREE.quantise(Palette.MAX_COLOURS-1, pixels);
 			
-			gifWriter.writeToSequence(img.toBufferedImage());
+			export(filename, tag, images, fps, print, threads, palette, workers, encoder, sampled);
+		} finally {
+			workers.shutdownNow();
+			encoder.shutdownNow();
 		}
 
 		System.out.println();
-		gifWriter.close();
 	}
+	
+	private void export(String filename, String tag, int images, int fps, boolean print, int threads, Palette palette,
+						ExecutorService workers, ExecutorService encoder, Map<Integer, Future<DImage>> sampled) throws IOException{
+		
+		Deque<Future<DImage>> rendering = new ArrayDeque<Future<DImage>>();
+		BlockingQueue<DImage> blended   = new ArrayBlockingQueue<DImage>(threads);
+		
+		try(GIFEncoder gif = new GIFEncoder(FileChannel.open(Paths.get(filename), CREATE, TRUNCATE_EXISTING, WRITE), width, height, GIFEncoder.LOOP_FOREVER, palette)){
+			gif.setExecutor(workers, RENDER_AHEAD*threads);
+			
+			Future<?> encoding = encoder.submit(() -> {
+				for(DImage img = blended.take(); img != END_OF_ANIMATION; img = blended.take())
+					gif.writeFrame(img, 1000/fps);
+				
+				return null;
+			});
+			
+			try {
+				int submitted = 0;
+				DImage prev = null;
+				
+				for(int i=0; i<images; i++){
+					//Keep at most RENDER_AHEAD frames per worker queued or in progress
+					while(submitted < images && submitted < i + RENDER_AHEAD*threads){
+						Future<DImage> f = sampled.remove(submitted);
+						rendering.add(f != null ? f : render(workers, tag, submitted, images));
+						submitted++;
+					}
+				
+					DImage img = await(rendering.poll());
+				
+					if(print)tag(i,images,tag);
+				
+					if(prev!=null){
+						prev.setAlpha(0.825);
+						img.blend(prev, BlendMode.SOFT_LIGHT);
+						img.setAlpha(1.0);
+					}
+				
+					prev = new DImage(img);
+				
+					if(i==0){
+						String newFilename = filename.substring(0,filename.lastIndexOf(".")) + "_sample" + filename.substring(filename.lastIndexOf("."));
+						DImageIO.write(img, newFilename);
+					}
+				
+					put(blended, img, encoding);
+				}
+				
+				put(blended, END_OF_ANIMATION, encoding);
+				await(encoding);
+			} finally {
+				//The encoder must be done with the GIFEncoder before it is closed, also when the export has failed
+				encoding.cancel(true);
+				stop(encoder);
+			}
+		}
+	}
+	
+	/**
+	 * Interrupts the thread of 'executor' and waits until it has stopped.
+	 */
+	private static void stop(ExecutorService executor){
+		executor.shutdownNow();
+		
+		boolean interrupted = false;
+		
+		for(;;){
+			try {
+				if(executor.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS))
+					break;
+			} catch (InterruptedException e) {
+				interrupted = true;
+			}
+		}
+		
+		if(interrupted)
+			Thread.currentThread().interrupt();
+	}
+	
+	private Future<DImage> render(ExecutorService workers, String tag, int i, int images){
+		double t = (double)i/(double)(images-1);
+		return workers.submit(() -> generateImage(tag, t));
+	}
+	
+	/**
+	 * Hands a frame to the encoder, giving up if the encoder has failed.
+	 */
+	private static void put(BlockingQueue<DImage> queue, DImage img, Future<?> encoding) throws IOException{
+		try {
+			while(!queue.offer(img, 100, TimeUnit.MILLISECONDS))
+				if(encoding.isDone())
+					await(encoding);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted while exporting animation");
+		}
+	}
+	
+	/**
+	 * Waits for a stage of the export, rethrowing whatever it failed with.
+	 */
+	private static <T> T await(Future<T> future) throws IOException{
+		try {
+			return future.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted while exporting animation");
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			
+			if(cause instanceof IOException)
+				throw (IOException) cause;
+			if(cause instanceof RuntimeException)
+				throw (RuntimeException) cause;
+			if(cause instanceof Error)
+				throw (Error) cause;
+			
+			throw new RuntimeException(cause);
+		}
+	}
+	
+	private static final int RENDER_AHEAD   = 2,
+							 PALETTE_FRAMES = 8;
+	
+	/**
+	 * Tells the encoder there are no more frames.
+	 */
+	private static final DImage END_OF_ANIMATION = new DImage(1, 1);
 
+	/**
+	 * Returns a stream which renders the frames of an animation as they are needed, rather than keeping them in memory.
+	 * Up to one frame per available processor is rendered ahead concurrently.
+	 * @param t0 The time variable of the first frame.
+	 * @param t1 The time variable of the last frame.
+	 * @param images The number of frames.
+	 */
+	public AnimationStream streamAnimation(String tag, double t0, double t1, int images){
+		return new AnimationStream(images, i -> generateImage(tag, images==1 ? t0 : t0 + (t1-t0)*i/(images-1)),
+												Runtime.getRuntime().availableProcessors());
+	}
+	
+	/**
+	 * Generates every frame of an animation, keeping the frames on the heap.
+	 */
 	public Animation generateAnimation(String tag, int images, boolean print){
-		Animation a = new Animation();
-		
+		return generateAnimation(tag, images, print, new Animation());
+	}
+	
+	/**
+	 * Generates every frame of an animation into 'store', so the frames are kept on disk rather than on the heap.
+	 * The store should be empty, and closing the animation when done with it closes the store as well.
+	 */
+	public Animation generateAnimation(String tag, int images, boolean print, FrameStore store){
+		return generateAnimation(tag, images, print, new Animation(store));
+	}
+	
+	private Animation generateAnimation(String tag, int images, boolean print, Animation a){
 		for(int t=0; t<images; t++){
 			if(print)tag(t,images,tag);
 			a.addImage(generateImage(tag, (double)t/(double)(images-1)));
@@ -133,7 +395,8 @@ public abstract class Generator {
 	}
 	
 	/**
-	 * Generates a color object for a given (x,y) pixel
+	 * Generates a color object for a given (x,y) pixel.
+	 * Frames are rendered concurrently by exportAnimation(), so this must be safe to call from several threads at once.
 	 * @param x The x-coordinate (in the interval [0, 1]) of the point.
 	 * @param y The y-coordinate (in the interval [0, 1]) of the point.
 	 * @param t The time variable (also in the interval [0, 1]).
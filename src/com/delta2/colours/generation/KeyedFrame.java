@@ -0,0 +1,35 @@
+package com.delta2.colours.generation;
+
+/**
+ * A KeyedFrame describes a single frame of an escape-time generator, in which the colour of a pixel only depends on
+ * a small integer key (e.g. the root or orbit a point ends up at, and the number of iterations it takes).
+ * Pixels with the same key always get the same colour, so computing the keys (the expensive part)
+ * is kept apart from colouring them, and a frame may compute the keys of a whole row at once.
+ * A KeyedFrame is used by several threads at once.
+ * @author ssodelta
+ *
+ */
+public interface KeyedFrame {
+
+	/**
+	 * @param x The x-coordinate (in the interval [0, 1]) of the point.
+	 * @param y The y-coordinate (in the interval [0, 1]) of the point.
+	 * @return The key of the point.
+	 */
+	public int key(double x, double y);
+
+	/**
+	 * Writes the keys of the points (nx[x], y) for every x in [x0; x1) into keys[0; x1-x0).
+	 * By default key() is called for every point, but a frame may override this to work on several points at once.
+	 */
+	public default void keys(double[] nx, int x0, int x1, double y, int[] keys){
+		for(int x=x0; x<x1; x++)
+			keys[x-x0] = key(nx[x], y);
+	}
+
+	/**
+	 * Writes the RGB colour of every point with the given key into 'rgb'.
+	 */
+	public void colour(int key, double[] rgb);
+
+}
@@ -0,0 +1,26 @@
+package com.delta2.colours.generation;
+
+import com.delta2.colours.DRaster;
+
+/**
+ * A RowGenerator fills the pixels of a single frame one row at a time, writing primitive channel values straight into
+ * the planes of a raster instead of returning a Colour per pixel.
+ * It is made by Generator.getRows() for a particular time t, so anything which only depends on t is computed once per frame.
+ * @author ssodelta
+ *
+ */
+@FunctionalInterface
+public interface RowGenerator {
+
+	/**
+	 * Writes the RGB channels of the pixels [x0; x1) of row y into 'raster'.
+	 * @param raster The RGB raster of the frame.
+	 * @param y The index of the row.
+	 * @param ny The y-coordinate of the row (in the interval [0, 1]).
+	 * @param nx The x-coordinate (in the interval [0, 1]) of every column of the raster.
+	 * @param x0 The first column to write.
+	 * @param x1 The column after the last one to write.
+	 */
+	public void generateRow(DRaster raster, int y, double ny, double[] nx, int x0, int x1);
+
+}
@@ -0,0 +1,71 @@
+package com.delta2.colours.gif;
+
+import java.util.Arrays;
+import java.util.concurrent.Future;
+
+/**
+ * A frame of a GIF file which has not been written yet. It is compressed separately from the rest of the file,
+ * possibly on another thread, and its delay can be extended until it is written.
+ * @author ssodelta
+ *
+ */
+final class Frame {
+
+	final int left, top, width, height;
+
+	/**
+	 * The local colour table, or null if the frame uses the global one.
+	 */
+	final int[] palette;
+	final int bits;
+
+	/**
+	 * The index of the transparent colour, or -1 if the frame has none.
+	 */
+	final int transparent;
+
+	/**
+	 * The time the frame is shown in milliseconds.
+	 */
+	int delay;
+
+	/**
+	 * The colour indices of the frame until it is compressed, and the compressed image data afterwards.
+	 */
+	private byte[] indices, data;
+	private int length;
+
+	/**
+	 * Set while the frame is being compressed on another thread.
+	 */
+	Future<?> compression;
+
+	Frame(int left, int top, int width, int height, int[] palette, int bits, int transparent, byte[] indices, int delay){
+		this.left   = left;
+		this.top    = top;
+		this.width  = width;
+		this.height = height;
+		this.palette     = palette;
+		this.bits        = bits;
+		this.transparent = transparent;
+		this.indices = indices;
+		this.delay   = delay;
+	}
+
+	/**
+	 * Compresses the indices of this frame with 'lzw', keeping a copy of the result.
+	 */
+	void compress(LZWEncoder lzw){
+		length  = lzw.encode(indices, width*height, Math.max(2, bits));
+		data    = Arrays.copyOf(lzw.getData(), length);
+		indices = null;
+	}
+
+	byte[] getData(){
+		return data;
+	}
+
+	int getLength(){
+		return length;
+	}
+}
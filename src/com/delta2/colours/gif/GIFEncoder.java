@@ -0,0 +1,404 @@
+package com.delta2.colours.gif;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+
+import com.delta2.colours.DImage;
+
+/**
+ * Writes an animated GIF89a file frame by frame to a channel, without going through ImageIO.
+ * Frames are given either as packed 0xRRGGBB pixels, which are reduced to a palette of at most 256 colours,
+ * or as colour indices together with their own palette.
+ * Frames are compressed as soon as they are given, either on the calling thread or concurrently on an executor,
+ * and written in order as soon as they and all frames before them are compressed.
+ * 
+ * Frames with at most 256 colours are always written losslessly with a local colour table.
+ * Other frames are mapped to the global palette if the encoder was given one, which is written once in the header
+ * and never rebuilt, and otherwise to a palette built for the frame by the quantiser.
+ * 
+ * Every frame is compared with what the previous frames left on screen, and only the bounding rectangle of the pixels
+ * that change is written, with the unchanged pixels inside it transparent (if the colour table has a free index).
+ * A frame identical to the previous one is not written at all, but extends the delay of the previous frame instead,
+ * so every frame is held back until the next one is given. Palettes with at most 255 colours leave room for transparency.
+ * @author ssodelta
+ *
+ */
+public final class GIFEncoder implements Closeable {
+
+	/**
+	 * Loop counts for the constructor; any other positive number plays the animation that many extra times.
+	 */
+	public static final int LOOP_FOREVER = 0,
+							NO_LOOP      = -1;
+
+	private static final int BUFFER_SIZE = 1 << 16,
+							 MAX_COLOURS = Palette.MAX_COLOURS,
+							 DISPOSAL_NONE = 1;
+
+	private final WritableByteChannel channel;
+	private final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+
+	private final ThreadLocal<LZWEncoder> lzw = ThreadLocal.withInitial(LZWEncoder::new);
+
+	private final int width, height;
+
+	private final Palette global;
+	private final int[] globalColours;
+	private Quantiser quantiser = Quantiser.OCTREE;
+
+	private byte[] indices;
+	private boolean closed;
+
+	/**
+	 * The colours currently shown by a decoder, and the frames which have not been written yet.
+	 */
+	private int[] shown;
+	private final Deque<Frame> frames = new ArrayDeque<Frame>();
+
+	private ExecutorService executor;
+	private int maxInFlight = 1;
+
+	public GIFEncoder(WritableByteChannel channel, int width, int height, int loops) throws IOException{
+		this(channel, width, height, loops, null);
+	}
+
+	/**
+	 * Constructs a new GIFEncoder and writes the header of the file.
+	 * @param channel The channel to write to. It is closed when the encoder is closed.
+	 * @param width The width of every frame in pixels.
+	 * @param height The height of every frame in pixels.
+	 * @param loops How many times the animation repeats, LOOP_FOREVER or NO_LOOP.
+	 * @param global The palette shared by every frame, or null to build a palette for every frame.
+	 */
+	public GIFEncoder(WritableByteChannel channel, int width, int height, int loops, Palette global) throws IOException{
+		if(width<1 || height<1 || width>0xFFFF || height>0xFFFF)
+			throw new IllegalArgumentException("Error, the width and height of a GIF must be in [1; 65535].");
+		if(loops<NO_LOOP || loops>0xFFFF)
+			throw new IllegalArgumentException("Error, the loop count must be NO_LOOP, LOOP_FOREVER or at most 65535.");
+
+		this.channel = channel;
+		this.width   = width;
+		this.height  = height;
+		this.global  = global;
+		this.globalColours = global==null ? null : global.getColours();
+
+		put("GIF89a");
+
+		//Logical screen descriptor
+		putShort(width);
+		putShort(height);
+		put(global==null ? 0x70 : 0xF0 | (global.getBits()-1));
+		put(0);
+		put(0);
+
+		if(global != null)
+			putColourTable(global.getColours(), global.getBits());
+
+		if(loops != NO_LOOP){
+			put(0x21);
+			put(0xFF);
+			put(11);
+			put("NETSCAPE2.0");
+			put(3);
+			put(1);
+			putShort(loops);
+			put(0);
+		}
+	}
+
+	public int getWidth(){
+		return width;
+	}
+
+	public int getHeight(){
+		return height;
+	}
+
+	/**
+	 * Compresses frames on 'executor' instead of the calling thread. Frames are still written in order as their compression
+	 * finishes, so the file is the same as without an executor.
+	 * @param executor The executor to compress frames on, or null to compress them on the calling thread.
+	 * @param maxInFlight The maximum number of frames held in memory while they are compressed or wait for earlier frames.
+	 */
+	public void setExecutor(ExecutorService executor, int maxInFlight){
+		if(maxInFlight<1)
+			throw new IllegalArgumentException("Error, the number of frames in flight must be a positive integer.");
+
+		this.executor    = executor;
+		this.maxInFlight = executor==null ? 1 : Math.max(2, maxInFlight);
+	}
+
+	/**
+	 * Sets the quantiser used to build a palette for every frame when there is no global palette.
+	 */
+	public void setQuantiser(Quantiser quantiser){
+		this.quantiser = quantiser;
+	}
+
+	/**
+	 * Writes an image as the next frame.
+	 * @param img The image, which must have the dimensions of the animation.
+	 * @param delay The time the frame is shown in milliseconds.
+	 */
+	public void writeFrame(DImage img, int delay) throws IOException{
+		writeFrame(img.toPackedRGB(), delay);
+	}
+
+	/**
+	 * Writes packed 0xRRGGBB pixels (row by row) as the next frame.
+	 * @param rgb The pixels of the frame.
+	 * @param delay The time the frame is shown in milliseconds.
+	 */
+	public void writeFrame(int[] rgb, int delay) throws IOException{
+		checkSize(rgb.length);
+
+		if(indices == null)
+			indices = new byte[width*height];
+
+		int[] palette = Palettes.exact(rgb, indices, MAX_COLOURS);
+
+		if(palette != null){
+			writeFrame(indices, palette, delay);
+		} else if(global != null){
+			global.map(rgb, indices);
+			writeFrame(indices, null, globalColours, global.getBits(), delay);
+		} else {
+			Palette local = quantiser.quantise(MAX_COLOURS-1, rgb);
+			local.map(rgb, indices);
+			writeFrame(indices, local.getColours(), delay);
+		}
+	}
+
+	/**
+	 * Writes colour indices (row by row) as the next frame.
+	 * @param indices The palette index of every pixel of the frame.
+	 * @param palette The colours of the frame as 0xRRGGBB, at most 256 of them.
+	 * @param delay The time the frame is shown in milliseconds.
+	 */
+	public void writeFrame(byte[] indices, int[] palette, int delay) throws IOException{
+		checkSize(indices.length);
+
+		if(palette.length<1 || palette.length>MAX_COLOURS)
+			throw new IllegalArgumentException("Error, a palette must have between 1 and "+MAX_COLOURS+" colours.");
+
+		//Leave room for a transparent colour if possible
+		int bits = 1;
+		while((1 << bits) < Math.min(MAX_COLOURS, palette.length+1))
+			bits++;
+
+		writeFrame(indices, palette, palette, bits, delay);
+	}
+
+	/**
+	 * Writes the part of a frame that differs from what is currently shown, or extends the delay of the previous frame
+	 * if nothing differs.
+	 * @param table The local colour table, or null to use the global one.
+	 * @param colours The colours the indices refer to.
+	 */
+	private void writeFrame(byte[] indices, int[] table, int[] colours, int bits, int delay) throws IOException{
+		if(closed)
+			throw new IllegalStateException("cannot write a frame to a closed GIFEncoder.");
+
+		if(shown == null){
+			shown = new int[width*height];
+
+			for(int i=0; i<shown.length; i++)
+				shown[i] = colours[indices[i] & 0xFF];
+
+			queue(new Frame(0, 0, width, height, table, bits, -1, Arrays.copyOf(indices, width*height), delay));
+			return;
+		}
+
+		//Bounding rectangle of the pixels that change
+		int x0 = width, y0 = height, x1 = -1, y1 = -1;
+
+		for(int y=0; y<height; y++){
+			int row = y*width;
+
+			for(int x=0; x<width; x++)
+				if(colours[indices[row+x] & 0xFF] != shown[row+x]){
+					if(x<x0) x0 = x;
+					if(x>x1) x1 = x;
+					if(y<y0) y0 = y;
+					y1 = y;
+				}
+		}
+
+		if(x1 < 0){
+			frames.peekLast().delay += delay;
+			return;
+		}
+
+		int w = x1-x0+1,
+			h = y1-y0+1;
+
+		//Pixels inside the rectangle that do not change are left transparent, if the table has a free index
+		int transparent = colours.length < 1<<bits ? colours.length : -1;
+
+		byte[] region = new byte[w*h];
+
+		for(int y=0; y<h; y++){
+			int in = (y0+y)*width + x0;
+
+			for(int x=0; x<w; x++){
+				int i = in+x,
+					c = colours[indices[i] & 0xFF];
+
+				if(c == shown[i] && transparent >= 0){
+					region[y*w + x] = (byte) transparent;
+				} else {
+					region[y*w + x] = indices[i];
+					shown[i] = c;
+				}
+			}
+		}
+
+		queue(new Frame(x0, y0, w, h, table, bits, transparent, region, delay));
+	}
+
+	/**
+	 * Starts compressing a frame, and writes the frames before it whose compression is done, in order.
+	 * The last frame is always held back, so its delay can be extended if the next frame is a duplicate.
+	 */
+	private void queue(Frame frame) throws IOException{
+		if(executor == null)
+			frame.compress(lzw.get());
+		else
+			frame.compression = executor.submit(() -> frame.compress(lzw.get()));
+
+		frames.add(frame);
+
+		while(frames.size() > 1 && (frames.size() > maxInFlight || isCompressed(frames.peek())))
+			write(frames.poll());
+	}
+
+	private static boolean isCompressed(Frame frame){
+		return frame.compression == null || frame.compression.isDone();
+	}
+
+	private void write(Frame frame) throws IOException{
+		if(frame.compression != null){
+			try {
+				frame.compression.get();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new InterruptedIOException("Interrupted while compressing a frame");
+			} catch (ExecutionException e) {
+				if(e.getCause() instanceof RuntimeException)
+					throw (RuntimeException) e.getCause();
+
+				throw new IOException("Error, could not compress a frame", e.getCause());
+			}
+		}
+
+		//Graphic control extension, leaving every frame in place for the next one to be drawn on top of
+		put(0x21);
+		put(0xF9);
+		put(4);
+		put(DISPOSAL_NONE << 2 | (frame.transparent >= 0 ? 1 : 0));
+		putShort(Math.min(0xFFFF, frame.delay / 10));
+		put(Math.max(0, frame.transparent));
+		put(0);
+
+		//Image descriptor
+		put(0x2C);
+		putShort(frame.left);
+		putShort(frame.top);
+		putShort(frame.width);
+		putShort(frame.height);
+
+		if(frame.palette == null){
+			put(0);
+		} else {
+			put(0x80 | (frame.bits-1));
+			putColourTable(frame.palette, frame.bits);
+		}
+
+		put(frame.getData(), frame.getLength());
+	}
+
+	/**
+	 * Writes the trailer of the file and closes the channel.
+	 */
+	@Override
+	public void close() throws IOException{
+		if(closed)
+			return;
+
+		closed = true;
+
+		try {
+			while(!frames.isEmpty())
+				write(frames.poll());
+
+			put(0x3B);
+			flush();
+		} finally {
+			channel.close();
+		}
+	}
+
+	private void putColourTable(int[] palette, int bits) throws IOException{
+		for(int i=0; i<1<<bits; i++){
+			int c = i < palette.length ? palette[i] : 0;
+
+			put(c >> 16);
+			put(c >>  8);
+			put(c);
+		}
+	}
+
+	private void checkSize(int pixels){
+		if(pixels != width*height)
+			throw new IllegalArgumentException("Error, a frame must have exactly "+width+"x"+height+" pixels.");
+	}
+
+	//---Output
+
+	private void put(int b) throws IOException{
+		if(!buffer.hasRemaining())
+			flush();
+
+		buffer.put((byte) b);
+	}
+
+	private void putShort(int s) throws IOException{
+		put(s);
+		put(s >> 8);
+	}
+
+	private void put(String s) throws IOException{
+		for(int i=0; i<s.length(); i++)
+			put(s.charAt(i));
+	}
+
+	private void put(byte[] data, int length) throws IOException{
+		int off = 0;
+
+		while(off < length){
+			if(!buffer.hasRemaining())
+				flush();
+
+			int n = Math.min(buffer.remaining(), length-off);
+			buffer.put(data, off, n);
+			off += n;
+		}
+	}
+
+	private void flush() throws IOException{
+		buffer.flip();
+
+		while(buffer.hasRemaining())
+			channel.write(buffer);
+
+		buffer.clear();
+	}
+}
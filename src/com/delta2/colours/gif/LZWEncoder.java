@@ -0,0 +1,163 @@
+package com.delta2.colours.gif;
+
+import java.util.Arrays;
+
+/**
+ * Compresses the colour indices of a GIF image into the variable-length LZW code stream of the GIF format,
+ * already split into data sub-blocks of at most 255 bytes.
+ * The string table is an open-addressing hash table from (prefix code, next index) to code, so nothing is allocated per code,
+ * and an encoder can be reused for any number of images. An encoder is not thread-safe.
+ * @author ssodelta
+ *
+ */
+final class LZWEncoder {
+
+	private static final int MAX_BITS  = 12,
+							 MAX_CODES = 1 << MAX_BITS,
+							 HASH_SIZE = 8192,
+							 HASH_MASK = HASH_SIZE - 1,
+							 BLOCK_SIZE = 255;
+
+	private final int[] keys  = new int[HASH_SIZE],
+						codes = new int[HASH_SIZE];
+
+	private byte[] data = new byte[1 << 12];
+	private int length;
+
+	//Bit packing and the current sub-block
+	private int bits, bitCount, blockStart;
+
+	/**
+	 * Compresses 'count' colour indices.
+	 * @param pixels The colour indices, one per byte.
+	 * @param count The number of indices.
+	 * @param minCodeSize The LZW minimum code size, i.e. the number of bits per colour index (at least 2).
+	 * @return The length of the compressed image data, which is found at the start of getData().
+	 * It begins with the minimum code size and ends with the block terminator.
+	 */
+	int encode(byte[] pixels, int count, int minCodeSize){
+		length = 0;
+		bits = bitCount = 0;
+
+		put(minCodeSize);
+		startBlock();
+
+		int clear = 1 << minCodeSize,
+			eoi   = clear + 1;
+
+		int codeSize = minCodeSize + 1,
+			maxCode  = (1 << codeSize) - 1,
+			nextCode = clear + 2;
+
+		Arrays.fill(keys, -1);
+		emit(clear, codeSize);
+
+		if(count > 0){
+			int prefix = pixels[0] & 0xFF;
+
+			for(int i=1; i<count; i++){
+				int c   = pixels[i] & 0xFF,
+					key = prefix << 8 | c,
+					h   = hash(key);
+
+				while(keys[h] != -1 && keys[h] != key)
+					h = (h+1) & HASH_MASK;
+
+				if(keys[h] == key){
+					prefix = codes[h];
+					continue;
+				}
+
+				emit(prefix, codeSize);
+
+				//The code size grows once the next code to be assigned no longer fits
+				if(nextCode > maxCode && codeSize < MAX_BITS)
+					maxCode = (1 << ++codeSize) - 1;
+
+				if(nextCode < MAX_CODES){
+					keys[h]  = key;
+					codes[h] = nextCode++;
+				} else {
+					emit(clear, codeSize);
+					Arrays.fill(keys, -1);
+
+					codeSize = minCodeSize + 1;
+					maxCode  = (1 << codeSize) - 1;
+					nextCode = clear + 2;
+				}
+
+				prefix = c;
+			}
+
+			emit(prefix, codeSize);
+
+			if(nextCode > maxCode && codeSize < MAX_BITS)
+				codeSize++;
+		}
+
+		emit(eoi, codeSize);
+
+		if(bitCount > 0)
+			putBlockByte(bits & 0xFF);
+
+		endBlock();
+		put(0);
+
+		return length;
+	}
+
+	/**
+	 * @return The buffer holding the last compressed image. It is reused by the next call to encode().
+	 */
+	byte[] getData(){
+		return data;
+	}
+
+	private static int hash(int key){
+		return (key * 0x9E3779B1) >>> 19;
+	}
+
+	private void emit(int code, int codeSize){
+		bits |= code << bitCount;
+		bitCount += codeSize;
+
+		while(bitCount >= 8){
+			putBlockByte(bits & 0xFF);
+			bits >>>= 8;
+			bitCount -= 8;
+		}
+	}
+
+	private void putBlockByte(int b){
+		if(length - blockStart - 1 == BLOCK_SIZE){
+			endBlock();
+			startBlock();
+		}
+
+		put(b);
+	}
+
+	private void startBlock(){
+		blockStart = length;
+		put(0);
+	}
+
+	/**
+	 * Writes the length of the current sub-block, or drops it if it is empty.
+	 */
+	private void endBlock(){
+		int size = length - blockStart - 1;
+
+		if(size == 0)
+			length = blockStart;
+		else
+			data[blockStart] = (byte) size;
+	}
+
+	private void put(int b){
+		if(length == data.length)
+			data = Arrays.copyOf(data, data.length * 2);
+
+		data[length++] = (byte) b;
+	}
+}
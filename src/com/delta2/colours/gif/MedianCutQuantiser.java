@@ -0,0 +1,130 @@
+package com.delta2.colours.gif;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Builds a palette with Heckbert's median cut: starting from a box around all pixels,
+ * the box with the most pixels times the widest channel range is repeatedly split at the median of that channel,
+ * until there are as many boxes as colours. Every box then contributes the average colour of its pixels.
+ * @author ssodelta
+ *
+ */
+final class MedianCutQuantiser implements Quantiser {
+
+	private static final class Box {
+		final int start, end;
+		final int axis, range;
+
+		Box(int[] px, int start, int end){
+			this.start = start;
+			this.end   = end;
+
+			int[] min = {255, 255, 255},
+				  max = {0, 0, 0};
+
+			for(int i=start; i<end; i++)
+				for(int c=0; c<3; c++){
+					int v = channel(px[i], c);
+					if(v<min[c]) min[c] = v;
+					if(v>max[c]) max[c] = v;
+				}
+
+			int axis = 0;
+			for(int c=1; c<3; c++)
+				if(max[c]-min[c] > max[axis]-min[axis])
+					axis = c;
+
+			this.axis  = axis;
+			this.range = Math.max(0, max[axis]-min[axis]);
+		}
+
+		long score(){
+			return (long) (end-start) * range;
+		}
+	}
+
+	@Override
+	public Palette build(int[] pixels, int count, int colours){
+		if(colours<1 || colours>Palette.MAX_COLOURS)
+			throw new IllegalArgumentException("Error, a palette must have between 1 and "+Palette.MAX_COLOURS+" colours.");
+
+		if(count == 0)
+			return new Palette(new int[]{0});
+
+		int[] px = Arrays.copyOf(pixels, count);
+		long[] keys = new long[count];
+
+		List<Box> boxes = new ArrayList<Box>();
+		boxes.add(new Box(px, 0, count));
+
+		while(boxes.size() < colours){
+			int best = -1;
+
+			for(int i=0; i<boxes.size(); i++)
+				if(boxes.get(i).range > 0 && (best<0 || boxes.get(i).score() > boxes.get(best).score()))
+					best = i;
+
+			//Every box holds a single colour
+			if(best < 0)
+				break;
+
+			Box box = boxes.get(best);
+
+			//Sort the box along its widest channel
+			for(int i=box.start; i<box.end; i++)
+				keys[i] = (long) channel(px[i], box.axis) << 24 | px[i] & 0xFFFFFF;
+
+			Arrays.sort(keys, box.start, box.end);
+
+			for(int i=box.start; i<box.end; i++)
+				px[i] = (int) (keys[i] & 0xFFFFFF);
+
+			int split = split(px, box);
+
+			boxes.set(best, new Box(px, box.start, split));
+			boxes.add(new Box(px, split, box.end));
+		}
+
+		int[] palette = new int[boxes.size()];
+
+		for(int i=0; i<palette.length; i++){
+			Box box = boxes.get(i);
+			long[] sum = new long[3];
+
+			for(int j=box.start; j<box.end; j++)
+				for(int c=0; c<3; c++)
+					sum[c] += channel(px[j], c);
+
+			int n = box.end - box.start;
+
+			palette[i] = (int) ((sum[0] + n/2) / n) << 16
+					   | (int) ((sum[1] + n/2) / n) <<  8
+					   | (int) ((sum[2] + n/2) / n);
+		}
+
+		return new Palette(palette);
+	}
+
+	/**
+	 * Finds the position closest to the median of a sorted box where the value along its axis changes,
+	 * so no colour ends up in both halves.
+	 */
+	private static int split(int[] px, Box box){
+		int mid = box.start + (box.end - box.start)/2;
+
+		for(int d=0; ; d++){
+			int up = mid + d, down = mid - d;
+
+			if(up < box.end && up > box.start && channel(px[up], box.axis) != channel(px[up-1], box.axis))
+				return up;
+			if(down > box.start && down < box.end && channel(px[down], box.axis) != channel(px[down-1], box.axis))
+				return down;
+		}
+	}
+
+	private static int channel(int rgb, int c){
+		return rgb >> (16 - 8*c) & 0xFF;
+	}
+}
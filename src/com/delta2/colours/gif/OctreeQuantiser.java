@@ -0,0 +1,133 @@
+package com.delta2.colours.gif;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Builds a palette by inserting every pixel into an octree over the RGB cube (one level per bit of each channel),
+ * and merging the children of the nodes holding the fewest pixels, deepest first, until few enough leaves are left.
+ * Every leaf then contributes the average colour of its pixels.
+ * @author ssodelta
+ *
+ */
+final class OctreeQuantiser implements Quantiser {
+
+	private static final int DEPTH = 8;
+
+	private static final class Node {
+		Node[] children;
+		int count;
+		long r, g, b;
+	}
+
+	@Override
+	public Palette build(int[] pixels, int count, int colours){
+		if(colours<1 || colours>Palette.MAX_COLOURS)
+			throw new IllegalArgumentException("Error, a palette must have between 1 and "+Palette.MAX_COLOURS+" colours.");
+
+		//reducible.get(l) holds every node at level l which still has children
+		List<List<Node>> reducible = new ArrayList<List<Node>>();
+		for(int l=0; l<DEPTH; l++)
+			reducible.add(new ArrayList<Node>());
+
+		Node root = new Node();
+		root.children = new Node[8];
+		reducible.get(0).add(root);
+
+		int leaves = 0;
+
+		for(int i=0; i<count; i++){
+			int c = pixels[i],
+				r = c >> 16 & 0xFF,
+				g = c >>  8 & 0xFF,
+				b = c       & 0xFF;
+
+			Node node = root;
+
+			for(int l=0; l<DEPTH; l++){
+				int shift = 7-l,
+					child = (r >> shift & 1) << 2 | (g >> shift & 1) << 1 | (b >> shift & 1);
+
+				Node next = node.children[child];
+
+				if(next == null){
+					next = node.children[child] = new Node();
+
+					if(l+1 < DEPTH){
+						next.children = new Node[8];
+						reducible.get(l+1).add(next);
+					} else {
+						leaves++;
+					}
+				}
+
+				node = next;
+			}
+
+			node.count++;
+			node.r += r;
+			node.g += g;
+			node.b += b;
+		}
+
+		//The children of the nodes at the deepest level are always leaves, so merging them turns the node into a leaf
+		for(int l=DEPTH-1; l>=0 && leaves>colours; l--){
+			List<Node> level = reducible.get(l);
+
+			for(Node n : level)
+				for(Node child : n.children)
+					if(child != null){
+						n.count += child.count;
+						n.r += child.r;
+						n.g += child.g;
+						n.b += child.b;
+					}
+
+			level.sort(Comparator.comparingInt((Node n) -> n.count));
+
+			for(int i=0; i<level.size() && leaves>colours; i++){
+				Node n = level.get(i);
+				int children = 0;
+
+				for(Node child : n.children)
+					if(child != null)
+						children++;
+
+				n.children = null;
+				leaves -= children - 1;
+			}
+
+			//Nodes which keep their children must not count their pixels twice
+			for(Node n : level)
+				if(n.children != null)
+					n.count = 0;
+		}
+
+		List<Integer> palette = new ArrayList<Integer>();
+		collect(root, palette);
+
+		if(palette.isEmpty())
+			palette.add(0);
+
+		int[] out = new int[palette.size()];
+		for(int i=0; i<out.length; i++)
+			out[i] = palette.get(i);
+
+		return new Palette(out);
+	}
+
+	private static void collect(Node node, List<Integer> palette){
+		if(node.children == null){
+			if(node.count > 0)
+				palette.add((int) ((node.r + node.count/2) / node.count) << 16
+						  | (int) ((node.g + node.count/2) / node.count) <<  8
+						  | (int) ((node.b + node.count/2) / node.count));
+			return;
+		}
+
+		for(Node child : node.children)
+			if(child != null)
+				collect(child, palette);
+	}
+}
@@ -0,0 +1,146 @@
+package com.delta2.colours.gif;
+
+import java.util.Arrays;
+
+/**
+ * A Palette is a list of at most 256 colours (packed as 0xRRGGBB) that the pixels of a GIF frame are reduced to.
+ * Pixels are mapped to the palette through an inverse colour map, which stores the nearest palette colour
+ * for each of the 32x32x32 cells of the RGB cube, so mapping a pixel costs a single table lookup.
+ * The map is built the first time it is needed, and a Palette can then be shared by any number of frames and threads.
+ * @author ssodelta
+ *
+ */
+public final class Palette {
+
+	public static final int MAX_COLOURS = 256;
+
+	private static final int CELL_BITS = 5,
+							 CELLS     = 1 << CELL_BITS;
+
+	private final int[] colours;
+	private volatile byte[] inverse;
+
+	/**
+	 * Constructs a new Palette.
+	 * @param colours The colours as 0xRRGGBB, between 1 and 256 of them.
+	 */
+	public Palette(int[] colours){
+		if(colours.length<1 || colours.length>MAX_COLOURS)
+			throw new IllegalArgumentException("Error, a palette must have between 1 and "+MAX_COLOURS+" colours.");
+
+		this.colours = colours.clone();
+
+		for(int i=0; i<this.colours.length; i++)
+			this.colours[i] &= 0xFFFFFF;
+	}
+
+	public int size(){
+		return colours.length;
+	}
+
+	public int getColour(int index){
+		return colours[index];
+	}
+
+	public int[] getColours(){
+		return colours.clone();
+	}
+
+	/**
+	 * @return The number of bits per index needed for this palette, i.e. the GIF colour table holds 2^bits colours.
+	 */
+	public int getBits(){
+		int bits = 1;
+
+		while((1 << bits) < colours.length)
+			bits++;
+
+		return bits;
+	}
+
+	/**
+	 * @return The index of the palette colour closest to the cell of the RGB cube 'rgb' falls into.
+	 */
+	public int indexOf(int rgb){
+		return inverse()[cell(rgb)] & 0xFF;
+	}
+
+	/**
+	 * Maps every pixel of 'rgb' to the index of its nearest palette colour.
+	 */
+	public void map(int[] rgb, byte[] indices){
+		byte[] inv = inverse();
+
+		for(int i=0; i<rgb.length; i++)
+			indices[i] = inv[cell(rgb[i])];
+	}
+
+	private static int cell(int rgb){
+		return (rgb >> 9 & 0x7C00) | (rgb >> 6 & 0x3E0) | (rgb >> 3 & 0x1F);
+	}
+
+	private byte[] inverse(){
+		byte[] inv = inverse;
+
+		if(inv == null)
+			inverse = inv = buildInverse();
+
+		return inv;
+	}
+
+	/**
+	 * Finds the nearest palette colour to the centre of every cell by brute force,
+	 * scanning the cells of a row incrementally from the distances of the previous cell.
+	 */
+	private byte[] buildInverse(){
+		byte[] inv = new byte[CELLS*CELLS*CELLS];
+
+		int n = colours.length;
+		int[] pr = new int[n], pg = new int[n], pb = new int[n];
+
+		for(int i=0; i<n; i++){
+			pr[i] = colours[i] >> 16 & 0xFF;
+			pg[i] = colours[i] >>  8 & 0xFF;
+			pb[i] = colours[i]       & 0xFF;
+		}
+
+		int[] dist = new int[n];
+
+		for(int r=0; r<CELLS; r++)
+		for(int g=0; g<CELLS; g++){
+			int cr = r*8 + 4,
+				cg = g*8 + 4;
+
+			for(int i=0; i<n; i++)
+				dist[i] = sq(cr-pr[i]) + sq(cg-pg[i]);
+
+			for(int b=0; b<CELLS; b++){
+				int cb = b*8 + 4,
+					best = 0,
+					bestDist = Integer.MAX_VALUE;
+
+				for(int i=0; i<n; i++){
+					int d = dist[i] + sq(cb-pb[i]);
+
+					if(d < bestDist){
+						bestDist = d;
+						best = i;
+					}
+				}
+
+				inv[(r << 10) | (g << 5) | b] = (byte) best;
+			}
+		}
+
+		return inv;
+	}
+
+	private static int sq(int x){
+		return x*x;
+	}
+
+	@Override
+	public String toString(){
+		return "Palette"+Arrays.toString(colours);
+	}
+}
@@ -0,0 +1,64 @@
+package com.delta2.colours.gif;
+
+import java.util.Arrays;
+
+/**
+ * Lossless indexing of frames with few colours.
+ * @author ssodelta
+ *
+ */
+final class Palettes {
+
+	private Palettes(){}
+
+	/**
+	 * Indexes the pixels losslessly, if they have at most 'max' distinct colours.
+	 * @return The palette, or null (leaving 'indices' partially written) if there are more than 'max' colours.
+	 */
+	static int[] exact(int[] rgb, byte[] indices, int max){
+		//Open addressing from colour to index, at most half full
+		int size = Integer.highestOneBit(max) * 4,
+			mask = size - 1;
+
+		int[] keys   = new int[size],
+			  values = new int[size],
+			  colours = new int[max];
+
+		Arrays.fill(keys, -1);
+
+		int n = 0,
+			last = -1,
+			lastIndex = 0;
+
+		for(int i=0; i<rgb.length; i++){
+			int c = rgb[i] & 0xFFFFFF;
+
+			//Neighbouring pixels are often the same colour
+			if(c == last){
+				indices[i] = (byte) lastIndex;
+				continue;
+			}
+
+			int h = (c * 0x9E3779B1) >>> 16 & mask;
+
+			while(keys[h] != -1 && keys[h] != c)
+				h = (h+1) & mask;
+
+			if(keys[h] == -1){
+				if(n == max)
+					return null;
+
+				keys[h]    = c;
+				values[h]  = n;
+				colours[n] = c;
+				n++;
+			}
+
+			last      = c;
+			lastIndex = values[h];
+			indices[i] = (byte) lastIndex;
+		}
+
+		return Arrays.copyOf(colours, Math.max(1, n));
+	}
+}
@@ -0,0 +1,50 @@
+package com.delta2.colours.gif;
+
+/**
+ * A Quantiser builds a palette of a few colours that represent a set of packed 0xRRGGBB pixels well.
+ * Palettes are built from a sample of the pixels, so building one costs the same no matter how large the frames are.
+ * @author ssodelta
+ *
+ */
+public interface Quantiser {
+
+	/**
+	 * The number of pixels sampled when building a palette.
+	 */
+	public static final int SAMPLES = 1 << 16;
+
+	/**
+	 * Builds a palette from the first 'count' pixels of 'pixels'.
+	 * @param colours The maximum number of colours of the palette.
+	 */
+	public Palette build(int[] pixels, int count, int colours);
+
+	/**
+	 * Builds a single palette for one or more frames, from a sample of at most SAMPLES pixels spread evenly over them.
+	 * @param colours The maximum number of colours of the palette.
+	 * @param frames The frames as packed 0xRRGGBB pixels.
+	 */
+	public default Palette quantise(int colours, int[]... frames){
+		long total = 0;
+		for(int[] f : frames)
+			total += f.length;
+
+		int[] samples = new int[(int) Math.min(total, SAMPLES)];
+		int n = 0;
+
+		for(int[] f : frames){
+			//Every frame gets its share of the samples, at low-discrepancy positions to avoid aliasing with the rows
+			int share = (int) Math.min(f.length, Math.max(1, f.length * (long)samples.length / total));
+
+			for(int j=0; j<share && n<samples.length; j++){
+				double u = j * 0.6180339887498949;
+				samples[n++] = f[(int) ((u - Math.floor(u)) * f.length)];
+			}
+		}
+
+		return build(samples, n, colours);
+	}
+
+	public static final Quantiser OCTREE     = new OctreeQuantiser(),
+								  MEDIAN_CUT = new MedianCutQuantiser();
+}
@@ -6,6 +6,7 @@ import java.util.Set;
 import com.delta2.colours.Colour;
 import com.delta2.colours.colourspace.ColourSpace;
 import com.delta2.colours.generation.Generator;
+import com.delta2.colours.generation.RowGenerator;
 
 import dk.brics.automaton.Automaton;
 import dk.brics.automaton.RegExp;
@@ -82,13 +83,45 @@ public final class GradientRegex extends Generator {
 	@Override
 	protected Colour generate(double x, double y, double t) {
 
+		double[] hsv = new double[3];
+		
+		shade(x, y, t, hsv);
+		
+		return Colour.fromColourSpace(ColourSpace.HSV, hsv);
+	}
+	
+	@Override
+	protected RowGenerator getRows(double t) {
+		return (raster, y, ny, nx, x0, x1) -> {
+			double[] hsv = new double[3],
+					 rgb = new double[3];
+			
+			for(int x=x0; x<x1; x++){
+				shade(nx[x], ny, t, hsv);
+				ColourSpace.HSV.toRGB(hsv, rgb);
+				
+				int i = raster.index(x, y);
+				
+				for(int c=0; c<3; c++)
+					raster.getPlane(c)[i] = (float) rgb[c];
+			}
+		};
+	}
+	
+	/**
+	 * Writes the HSV colour of the point (x, y) into 'hsv'.
+	 */
+	private void shade(double x, double y, double t, double[] hsv){
+		
 		String regexPos = getRegexPos(x,y);
 		
 		int d = getDistance(regexPos);
 		
-		Colour c = Colour.fromColourSpace(ColourSpace.HSV,  new double[]{t*d/20.0,1.0/Math.sqrt(Math.sqrt(Math.sqrt(d))),1.0/Math.sqrt(Math.sqrt(Math.sqrt(d)))});
+		double sv = 1.0/Math.sqrt(Math.sqrt(Math.sqrt(d)));
 		
-		return c;
+		hsv[0] = t*d/20.0;
+		hsv[1] = sv;
+		hsv[2] = sv;
 	}
 
 	private String getRegexPos(double x, double y){
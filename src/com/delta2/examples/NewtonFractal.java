@@ -6,7 +6,9 @@ import com.delta2.colours.Colour;
 import com.delta2.colours.ColourUtil;
 import com.delta2.colours.colourspace.ColourSpace;
 import com.delta2.colours.generation.Generator;
+import com.delta2.colours.generation.KeyedFrame;
 import com.delta2.math.Complex;
+import com.delta2.math.DoubleDouble;
 import com.delta2.math.func.Polynomial;
 
 /**
@@ -15,11 +17,13 @@ import com.delta2.math.func.Polynomial;
  * 
  * g_{n+1} = g_n - f(g_n) / f'(g_n)
  * 
- * To create a Newton Fractal, for every pixel supply an inital guess g_0 = x + y*i and then keep iterating until the error
- * dips down beneath some acceptable threshold (defined by ColourUtil.ALMOST_ZERO). Sometimes Newton Fractals don't converge,
- * so a maximum iteration cap of 250 has been established.
+ * To create a Newton Fractal, for every pixel supply an inital guess g_0 = x + y*i and then keep iterating until the guess
+ * is close enough to one of the roots that it is known to converge to it (or, failing that, until the error
+ * dips down beneath some acceptable threshold defined by ColourUtil.ALMOST_ZERO). Sometimes Newton Fractals don't converge,
+ * so a maximum iteration cap (MAX_TRIES by default) has been established, and orbits which fall into a cycle
+ * are stopped as soon as the cycle is detected (see setCycleCheck()).
  * 
- * The colour of a given complex number is an HSV object with sat = value = 1, and hue = atan2(y, x) of the complex number.
+ * The colour of a given root is an HSV object with sat = value = 1, and hue = atan2(y, x) of the root.
  * 
  * To keep things simple, this Generator does not use general differentiable functions, 
  * but instead just polynomials (com.delta2.math.Polynomial), so:
@@ -36,6 +40,9 @@ import com.delta2.math.func.Polynomial;
  *        
  * This means that it's easy to create animations which loop, just make sure all b_n are multipla of 2pi.
  * 
+ * The view zooms in on a centre (the origin by default) as t goes from 0 to 1. Once the pixels are too close together
+ * to tell apart in double precision, frames are computed in double-double precision instead (see DeepOrbit).
+ * 
  * @author ssodelta
  *
  */
@@ -47,6 +54,20 @@ public final class NewtonFractal extends Generator {
 	
 	private double[] magCoeffs, speedCoeffs, phaseCoeffs;
 	
+	private volatile boolean debug = false;
+	
+	/**
+	 * The frame generate() used last, which is dropped whenever a setting changes.
+	 */
+	private volatile CachedFrame last;
+	
+	private volatile double centreRe = 0,
+							centreIm = 0,
+							zoom     = ZOOM;
+	
+	private volatile int maxTries      = MAX_TRIES,
+						 cycleInterval = CYCLE_INTERVAL;
+	
 	/**
 	 * Constructs a new Newton Fractal
 	 * @param p The Polynomial to use
@@ -101,53 +122,477 @@ public final class NewtonFractal extends Generator {
 		return coeffs;
 	}
 
+	/**
+	 * Generates a single pixel. Setting up a frame finds all roots of its polynomial, so the last frame is kept
+	 * and reused as long as t stays the same.
+	 */
 	@Override
 	protected Colour generate(double x, double y, double t) {
 		
-		double rr = r*Math.pow(0.8, t*30);
-		double dx = 0;
+		CachedFrame cached = last;
+		
+		if(cached == null || cached.t != t)
+			last = cached = new CachedFrame(t, getKeyedFrame(t));
+		
+		KeyedFrame frame = cached.frame;
+		
+		double[] rgb = new double[3];
+		
+		frame.colour(frame.key(x, y), rgb);
+		
+		return new Colour(rgb);
+	}
+	
+	/**
+	 * Every frame finds all roots of its polynomial up front (see Basins), so the colour of a pixel only depends on
+	 * the root it converges to and the number of tries it takes to get within reach of it.
+	 */
+	@Override
+	protected KeyedFrame getKeyedFrame(double t) {
+		
+		//The polynomial and its roots only depend on t, so they are set up once per frame
+		Basins basins = new Basins(getPolynomial(t), maxTries, cycleInterval);
+		
+		double rr = r*Math.pow(0.8, t*zoom);
+		
+		double cRe = centreRe,
+			   cIm = centreIm;
+		
+		boolean debug = this.debug;
+		
+		if(isDeep(rr, cRe, cIm)){
+			//Every thread rendering this frame keeps its own DeepOrbit, so single pixels allocate nothing either
+			ThreadLocal<DeepOrbit> orbits = ThreadLocal.withInitial(() -> new DeepOrbit(basins, cRe, cIm));
+			
+			return new KeyedFrame(){
+				@Override
+				public int key(double x, double y) {
+					return orbits.get().key(-rr+x*2*rr, -rr+y*2*rr, debug);
+				}
+				
+				@Override
+				public void keys(double[] nx, int x0, int x1, double y, int[] keys) {
+					DeepOrbit orbit = orbits.get();
+					
+					for(int x=x0; x<x1; x++)
+						keys[x-x0] = orbit.key(-rr+nx[x]*2*rr, -rr+y*2*rr, debug);
+				}
+				
+				@Override
+				public void colour(int key, double[] rgb) {
+					basins.colour(key, t, rgb);
+				}
+			};
+		}
+		
+		return new KeyedFrame(){
+			@Override
+			public int key(double x, double y) {
+				return basins.key(cRe+(-rr+x*2*rr), cIm+(-rr+y*2*rr), debug);
+			}
+			
+			@Override
+			public void colour(int key, double[] rgb) {
+				basins.colour(key, t, rgb);
+			}
+		};
+	}
+	
+	/**
+	 * @return Whether a frame of radius rr around cRe + cIm*i has pixels so close together (compared to the size of
+	 * the numbers Newton's method works on, which is at least that of the roots) that it needs double-double precision.
+	 */
+	private static boolean isDeep(double rr, double cRe, double cIm){
+		double spacing = 2*rr/(Math.max(WIDTH, HEIGHT)-1),
+			   scale   = Math.max(1, Math.hypot(cRe, cIm));
+		
+		return spacing < DEEP_SPACING*scale;
+	}
+	
+	/**
+	 * Sets the largest number of tries of Newton's method per pixel (MAX_TRIES by default, and at most TRIES_LIMIT).
+	 */
+	public void setMaxTries(int maxTries){
+		if(maxTries < 1 || maxTries > TRIES_LIMIT)
+			throw new IllegalArgumentException("Error, the maximum number of tries must be an integer in [1; "+TRIES_LIMIT+"].");
 		
-		Complex guess = new Complex(-rr+x*2*rr+dx, -rr+y*2*rr);
-		double err = 1;
+		this.maxTries = maxTries;
+		this.last = null;
+	}
+	
+	/**
+	 * Sets how often orbits are checked for cycles, in the style of Brent's cycle detection: an orbit saves its point
+	 * after 'interval' tries, and again after twice as many tries as the time before, and so on. An orbit which comes back
+	 * within ColourUtil.ALMOST_ZERO of its saved point has fallen into a cycle, so it stops there as non-convergent,
+	 * with the number of tries it took to detect the cycle. The default is CYCLE_INTERVAL, and 0 turns the check off,
+	 * so such orbits run until the maximum number of tries.
+	 */
+	public void setCycleCheck(int interval){
+		if(interval < 0)
+			throw new IllegalArgumentException("Error, the cycle check interval must be a non-negative integer.");
 		
-		int tries = 1;
+		this.cycleInterval = interval;
+		this.last = null;
+	}
+	
+	/**
+	 * Sets the point the animation zooms in on (the origin by default).
+	 */
+	public void setCentre(double re, double im){
+		this.centreRe = re;
+		this.centreIm = im;
+		this.last = null;
+	}
+	
+	/**
+	 * Sets how far the animation zooms in: the radius at time t is radius * 0.8^(t*zoom). The default is ZOOM.
+	 */
+	public void setZoom(double zoom){
+		if(!(zoom >= 0))
+			throw new IllegalArgumentException("Error, the zoom must be a non-negative number.");
 		
+		this.zoom = zoom;
+		this.last = null;
+	}
+	
+	/**
+	 * Prints every step of Newton's method to System.out (very slow, and off by default).
+	 */
+	public void setDebug(boolean debug){
+		this.debug = debug;
+		this.last = null;
+	}
+	
+	/**
+	 * @return The polynomial with its coefficients oscillated to time t.
+	 */
+	private Polynomial getPolynomial(double t){
 		double[] vals = new double[magCoeffs.length];
 		
 		for(int i=0; i<vals.length; i++)
 			vals[i] = magCoeffs[i] * Math.cos(t*2*Math.PI*speedCoeffs[i] + phaseCoeffs[i]);
 		
-		Polynomial q = new Polynomial(p).add(vals);
-		Polynomial qd = q.derivative();
+		return new Polynomial(p).add(vals);
+	}
+	
+	/**
+	 * The roots of the polynomial of a single frame, found once by Polynomial.roots(), each with a radius
+	 * (from Polynomial.newtonRadius()) within which Newton's method is proven to converge to it.
+	 * An orbit stops as soon as it enters one of these radii, instead of iterating until its steps are smaller
+	 * than ColourUtil.ALMOST_ZERO, which saves the last few (and slowest to pay off) iterations of every pixel.
+	 * The key of a pixel is the index of its root times 'range' plus the number of tries, where the index
+	 * 'none' stands for orbits which do not converge, either because they hit the maximum number of tries
+	 * or because they fell into a cycle.
+	 */
+	private static final class Basins {
+		
+		private final double[] c, rootRe, rootIm, radius2, hue;
+		private final int none, maxTries, range, interval;
 		
-		System.out.println("Initial guess: "+guess);
+		Basins(Polynomial q, int maxTries, int interval){
+			Complex[] roots = q.roots();
+			
+			c    = q.getCoefficients();
+			none = roots.length;
+			
+			//Keys go up to none*range + maxTries, which must fit in an int
+			if((none+1L)*(maxTries+1L) > Integer.MAX_VALUE)
+				throw new IllegalArgumentException("Error, "+maxTries+" tries are too many for a polynomial of degree "+none+".");
+			
+			this.maxTries = maxTries;
+			this.range    = maxTries+1;
+			this.interval = interval;
+			
+			rootRe  = new double[none];
+			rootIm  = new double[none];
+			radius2 = new double[none];
+			hue     = new double[none+1];
+			
+			for(int i=0; i<none; i++){
+				double radius = q.newtonRadius(roots[i]);
+				
+				rootRe[i]  = roots[i].getRe();
+				rootIm[i]  = roots[i].getIm();
+				radius2[i] = radius*radius;
+				hue[i]     = ColourUtil.mod(roots[i].arg(),2*Math.PI)/(2*Math.PI);
+			}
+		}
 		
-		while(err > ColourUtil.ALMOST_ZERO){
+		/**
+		 * Runs Newton's method from the point re + im*i.
+		 * Every step evaluates the polynomial and its derivative together by Horner's method, on plain doubles.
+		 */
+		int key(double re, double im, boolean debug){
+			
+			int tries = 1;
+			
+			//The point saved for cycle detection, and the tries at which it is next saved
+			double savedRe = re,
+				   savedIm = im;
 			
-			Complex newGuess = new Complex(guess).sub(q.evaluate(new Complex(guess)).div(qd.evaluate(new Complex(guess))));
-			err = newGuess.difference(guess);
+			int save = 1+interval,
+				gap  = interval;
 			
-			guess = newGuess;
-			System.out.println("\tnew guess: "+newGuess);
+			if(debug)
+				System.out.println("Initial guess: "+re+" + "+im+"*i");
 			
-			if(++tries >= 250)
-				break;
+			for(;;){
+				int key = settle(re, im, tries);
+				
+				if(key >= 0)
+					return key;
+				
+				if(tries == save){
+					savedRe = re;
+					savedIm = im;
+					gap    *= 2;
+					save   += gap;
+				}
+				
+				//p = p*z + c[i] and d = d*z + p, from the highest coefficient down
+				double pRe = c[c.length-1], pIm = 0,
+					   dRe = 0,             dIm = 0;
+				
+				for(int i=c.length-2; i>=0; i--){
+					double t = dRe*re - dIm*im + pRe;
+					dIm      = dRe*im + dIm*re + pIm;
+					dRe      = t;
+					
+					t   = pRe*re - pIm*im + c[i];
+					pIm = pRe*im + pIm*re;
+					pRe = t;
+				}
+				
+				//The step p/d
+				double den    = dRe*dRe + dIm*dIm,
+					   stepRe = (pRe*dRe + pIm*dIm) / den,
+					   stepIm = (pIm*dRe - pRe*dIm) / den;
+				
+				re -= stepRe;
+				im -= stepIm;
+				tries++;
+				
+				if(debug)
+					System.out.println("\tnew guess: "+re+" + "+im+"*i");
+				
+				if(!(Math.sqrt(stepRe*stepRe + stepIm*stepIm) > ColourUtil.ALMOST_ZERO))
+					return converged(re, im, tries);
+				
+				if(cycled(re, im, savedRe, savedIm))
+					return none*range + tries;
+			}
 		}
 		
+		/**
+		 * @return The key of an orbit at re + im*i after 'tries' tries if it is done, i.e. has entered the radius of a root
+		 * or hit the maximum number of tries, and -1 otherwise.
+		 */
+		private int settle(double re, double im, int tries){
+			for(int i=0; i<none; i++){
+				double dx = re-rootRe[i],
+					   dy = im-rootIm[i];
+				
+				if(dx*dx + dy*dy < radius2[i])
+					return i*range + tries;
+			}
+			
+			return tries >= maxTries ? none*range + tries : -1;
+		}
 		
-		Colour r = Colour.fromComplex(guess);
-
+		/**
+		 * @return Whether an orbit at re + im*i has come back to the point it saved for cycle detection.
+		 * Orbits which are converging to a root stop on their small steps before they can get here.
+		 */
+		private boolean cycled(double re, double im, double savedRe, double savedIm){
+			if(interval == 0)
+				return false;
+			
+			double dx = re-savedRe,
+				   dy = im-savedIm;
+			
+			return dx*dx + dy*dy < ColourUtil.ALMOST_ZERO*ColourUtil.ALMOST_ZERO;
+		}
+		
+		/**
+		 * @return The key of an orbit whose steps have become too small to go on outside the radius of every root,
+		 * which is attributed to the nearest root.
+		 */
+		private int converged(double re, double im, int tries){
+			int root = none;
+			double min = Double.POSITIVE_INFINITY;
+			
+			for(int i=0; i<none; i++){
+				double dx = re-rootRe[i],
+					   dy = im-rootIm[i],
+					   d  = dx*dx + dy*dy;
+				
+				if(d < min){
+					min  = d;
+					root = i;
+				}
+			}
+			
+			return root*range + tries;
+		}
+		
+		void colour(int key, double t, double[] rgb){
+			int tries = key % range;
+			
+			//The hue of the root (as in Colour.fromComplex), taken through RGB and back.
+			//HSV reads every channel before writing any, so it can convert 'rgb' in place.
+			rgb[0] = hue[key / range];
+			rgb[1] = 1;
+			rgb[2] = 1;
+			
+			ColourSpace.HSV.toRGB(rgb, rgb);
+			ColourSpace.HSV.fromRGB(rgb, rgb);
+			
+			double ds = -Math.log(tries/5.0)/3;
+			
+			rgb[0] += hueshift+tries/(20.0+20*t)+t;
+			rgb[1] += ds;
+			rgb[2] += ds;
+			
+			ColourSpace.HSV.toRGB(rgb, rgb);
+		}
+	}
+	
+	private static final class CachedFrame {
+		final double t;
+		final KeyedFrame frame;
 		
-		double ds = -Math.log(tries/5.0)/3;
+		CachedFrame(double t, KeyedFrame frame){
+			this.t     = t;
+			this.frame = frame;
+		}
+	}
+	
+	/**
+	 * Newton's method in double-double precision (about 106 bits), for frames whose pixels are closer together than
+	 * DEEP_SPACING times the size of the numbers involved. Pixels that far in differ only in the last few bits
+	 * of a double, so in double precision whole blocks of them run the same orbit. The offset of a pixel from the centre
+	 * is still computed in double precision (it is only as small as the radius), and added to the centre exactly.
+	 * Only the orbit itself is iterated in double-double: the roots and their radii are far coarser than a pixel,
+	 * so they are compared against the high part of the orbit. The arithmetic reuses the fields of a DeepOrbit,
+	 * so nothing is allocated per pixel, and a step costs a small multiple of a step of key() in double precision.
+	 */
+	private static final class DeepOrbit {
 		
-		if(hueshift<0)hueshift=Math.random();
-		Colour col = r.convert(ColourSpace.HSV).add(hueshift+tries/(20.0+20*t)+t,ds,ds).convert(ColourSpace.RGB);
+		private final Basins basins;
+		private final double centreRe, centreIm;
 		
-		return col;
+		private final DoubleDouble re  = new DoubleDouble(), im  = new DoubleDouble(),
+								   pRe = new DoubleDouble(), pIm = new DoubleDouble(),
+								   dRe = new DoubleDouble(), dIm = new DoubleDouble(),
+								   den = new DoubleDouble(), t   = new DoubleDouble(),
+								   u   = new DoubleDouble();
 		
+		DeepOrbit(Basins basins, double centreRe, double centreIm){
+			this.basins   = basins;
+			this.centreRe = centreRe;
+			this.centreIm = centreIm;
+		}
+		
+		/**
+		 * Runs Newton's method from the point (centreRe + offRe) + (centreIm + offIm)*i, doing the same steps as Basins.key().
+		 */
+		int key(double offRe, double offIm, boolean debug){
+			
+			double[] c = basins.c;
+			
+			re.set(centreRe).add(offRe);
+			im.set(centreIm).add(offIm);
+			
+			int tries = 1;
+			
+			double savedRe = re.getHi(),
+				   savedIm = im.getHi();
+			
+			int save = 1+basins.interval,
+				gap  = basins.interval;
+			
+			if(debug)
+				System.out.println("Initial guess: "+re+" + ("+im+")*i");
+			
+			for(;;){
+				int key = basins.settle(re.getHi(), im.getHi(), tries);
+				
+				if(key >= 0)
+					return key;
+				
+				if(tries == save){
+					savedRe = re.getHi();
+					savedIm = im.getHi();
+					gap    *= 2;
+					save   += gap;
+				}
+				
+				pRe.set(c[c.length-1]);
+				pIm.set(0);
+				dRe.set(0);
+				dIm.set(0);
+				
+				for(int i=c.length-2; i>=0; i--){
+					//d = d*z + p
+					t.set(dRe).mul(re).sub(u.set(dIm).mul(im)).add(pRe);
+					dIm.mul(re).add(u.set(dRe).mul(im)).add(pIm);
+					dRe.set(t);
+					
+					//p = p*z + c[i]
+					t.set(pRe).mul(re).sub(u.set(pIm).mul(im)).add(c[i]);
+					pIm.mul(re).add(u.set(pRe).mul(im));
+					pRe.set(t);
+				}
+				
+				//The step p/d, with the real part in t and the imaginary part in pIm
+				den.set(dRe).mul(dRe).add(u.set(dIm).mul(dIm));
+				t.set(pRe).mul(dRe).add(u.set(pIm).mul(dIm)).div(den);
+				pIm.mul(dRe).sub(u.set(pRe).mul(dIm)).div(den);
+				
+				re.sub(t);
+				im.sub(pIm);
+				tries++;
+				
+				if(debug)
+					System.out.println("\tnew guess: "+re+" + ("+im+")*i");
+				
+				double stepRe = t.getHi(),
+					   stepIm = pIm.getHi();
+				
+				if(!(Math.sqrt(stepRe*stepRe + stepIm*stepIm) > ColourUtil.ALMOST_ZERO))
+					return basins.converged(re.getHi(), im.getHi(), tries);
+				
+				if(basins.cycled(re.getHi(), im.getHi(), savedRe, savedIm))
+					return basins.none*basins.range + tries;
+			}
+		}
 	}
 	
-	private static double hueshift = -1.0;
+	/**
+	 * The default maximum number of tries per pixel, and the default interval of the cycle check (see setCycleCheck()).
+	 */
+	public static final int MAX_TRIES      = 250,
+							CYCLE_INTERVAL = 8;
+	
+	/**
+	 * The largest maximum number of tries setMaxTries() accepts. Keys hold the index of a root times the maximum
+	 * number of tries, so this keeps them within an int for polynomials of degree up to 2046.
+	 */
+	public static final int TRIES_LIMIT = 1 << 20;
+	
+	/**
+	 * The default zoom, see setZoom().
+	 */
+	public static final double ZOOM = 30;
+	
+	/**
+	 * Frames whose pixel spacing is below this fraction of the size of the numbers involved are computed in
+	 * double-double precision. It is 2^-40, i.e. about 4096 ulps, which leaves room for the digits Newton's method loses
+	 * near the boundaries of the basins.
+	 */
+	private static final double DEEP_SPACING = 0x1p-40;
+	
+	private static final double hueshift = Math.random();
 	
 	private static final int WIDTH  = 640,
 			 				 HEIGHT = 240,
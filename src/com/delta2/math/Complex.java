@@ -13,10 +13,18 @@ public final class Complex {
 	}
 	
 	public Complex(Complex other){
-		this.re = other.im;
+		this.re = other.re;
 		this.im = other.im;
 	}
 	
+	public double getRe(){
+		return re;
+	}
+	
+	public double getIm(){
+		return im;
+	}
+	
 	public Complex add(Complex other){
 		this.re += other.re;
 		this.im += other.im;
@@ -39,8 +47,11 @@ public final class Complex {
 	}
 	
 	public Complex mult(Complex other){
-		this.re = this.re * other.re - this.im * other.im;
-		this.im = this.im * other.re + this.re * other.im;
+		double re = this.re * other.re - this.im * other.im,
+			   im = this.im * other.re + this.re * other.im;
+		
+		this.re = re;
+		this.im = im;
 		return this;
 	}
 	
@@ -54,8 +65,11 @@ public final class Complex {
 		
 		double c2d2 = other.im*other.im + other.re*other.re;
 		
-		this.re = (this.re*other.re + this.im+other.im) / c2d2;
-		this.im = (this.im*other.im - this.re*other.im) / c2d2;
+		double re = (this.re*other.re + this.im*other.im) / c2d2,
+			   im = (this.im*other.re - this.re*other.im) / c2d2;
+		
+		this.re = re;
+		this.im = im;
 		
 		return this;
 	}
@@ -0,0 +1,191 @@
+package com.delta2.math;
+
+/**
+ * A DoubleDouble is a mutable real number of about 106 bits of precision, represented as the unevaluated sum hi + lo
+ * of two doubles with |lo| <= ulp(hi)/2. The arithmetic uses the error-free transformations of Dekker and Knuth,
+ * so it costs a small multiple of double arithmetic instead of the cost of arbitrary precision.
+ * 
+ * Like Complex, every operation changes this object and returns it, so a fixed set of objects can be reused
+ * for a whole computation without allocating per step.
+ * @author ssodelta
+ *
+ */
+public final class DoubleDouble {
+
+	/**
+	 * 2^27 + 1, which splits a double into two halves of 26 bits each.
+	 */
+	private static final double SPLITTER = 134217729.0;
+
+	private double hi, lo;
+
+	public DoubleDouble(){
+		this(0);
+	}
+
+	public DoubleDouble(double d){
+		this.hi = d;
+		this.lo = 0;
+	}
+
+	public DoubleDouble(DoubleDouble other){
+		this.hi = other.hi;
+		this.lo = other.lo;
+	}
+
+	public double getHi(){
+		return hi;
+	}
+
+	public double getLo(){
+		return lo;
+	}
+
+	/**
+	 * @return The double nearest to this number.
+	 */
+	public double doubleValue(){
+		return hi + lo;
+	}
+
+	public DoubleDouble set(double d){
+		hi = d;
+		lo = 0;
+		return this;
+	}
+
+	public DoubleDouble set(DoubleDouble other){
+		hi = other.hi;
+		lo = other.lo;
+		return this;
+	}
+
+	public DoubleDouble negate(){
+		hi = -hi;
+		lo = -lo;
+		return this;
+	}
+
+	public DoubleDouble add(double b){
+		double s = hi + b,
+			   v = s - hi,
+			   e = (hi - (s - v)) + (b - v);
+
+		e += lo;
+
+		return normalise(s, e);
+	}
+
+	public DoubleDouble add(DoubleDouble other){
+		double bHi = other.hi,
+			   bLo = other.lo;
+
+		//Two-sum of the high parts and of the low parts
+		double s = hi + bHi,
+			   v = s - hi,
+			   e = (hi - (s - v)) + (bHi - v);
+
+		double t = lo + bLo,
+			   w = t - lo,
+			   f = (lo - (t - w)) + (bLo - w);
+
+		e += t;
+
+		double s2 = s + e;
+		e = e - (s2 - s);
+		e += f;
+
+		return normalise(s2, e);
+	}
+
+	public DoubleDouble sub(DoubleDouble other){
+		double bHi = other.hi,
+			   bLo = other.lo;
+
+		double s = hi - bHi,
+			   v = s - hi,
+			   e = (hi - (s - v)) - (bHi + v);
+
+		double t = lo - bLo,
+			   w = t - lo,
+			   f = (lo - (t - w)) - (bLo + w);
+
+		e += t;
+
+		double s2 = s + e;
+		e = e - (s2 - s);
+		e += f;
+
+		return normalise(s2, e);
+	}
+
+	public DoubleDouble mul(double b){
+		double p = hi * b,
+			   e = twoProdError(hi, b, p) + lo * b;
+
+		return normalise(p, e);
+	}
+
+	public DoubleDouble mul(DoubleDouble other){
+		double bHi = other.hi,
+			   bLo = other.lo;
+
+		double p = hi * bHi,
+			   e = twoProdError(hi, bHi, p) + (hi * bLo + lo * bHi);
+
+		return normalise(p, e);
+	}
+
+	public DoubleDouble div(DoubleDouble other){
+		double bHi = other.hi,
+			   bLo = other.lo;
+
+		//Long division: each quotient digit is estimated from the high parts, and the remainder is formed exactly
+		double q1 = hi / bHi;
+
+		double p  = q1 * bHi,
+			   pe = twoProdError(q1, bHi, p) + q1 * bLo;
+
+		double rHi = hi - p,
+			   rLo = (hi - rHi - p) + lo - pe;
+
+		double q2 = (rHi + rLo) / bHi;
+
+		double s = q1 + q2,
+			   e = q2 - (s - q1);
+
+		hi = s;
+		lo = e;
+		return this;
+	}
+
+	/**
+	 * @return The exact rounding error of the product p = a*b, i.e. a*b - p, by Dekker's splitting.
+	 */
+	private static double twoProdError(double a, double b, double p){
+		double t  = SPLITTER * a,
+			   aH = t - (t - a),
+			   aL = a - aH;
+
+		t = SPLITTER * b;
+
+		double bH = t - (t - b),
+			   bL = b - bH;
+
+		return ((aH*bH - p) + aH*bL + aL*bH) + aL*bL;
+	}
+
+	/**
+	 * Sets this number to s + e, where |e| is small compared to |s|.
+	 */
+	private DoubleDouble normalise(double s, double e){
+		hi = s + e;
+		lo = e - (hi - s);
+		return this;
+	}
+
+	@Override
+	public String toString(){
+		return hi + " + " + lo;
+	}
+}
@@ -0,0 +1,137 @@
+package com.delta2.math.func;
+
+/**
+ * Finds all complex roots of a polynomial with real coefficients at once by the Aberth-Ehrlich method.
+ * Every approximation takes a Newton step which is deflated by the other approximations,
+ * so the approximations repel each other instead of converging to the same root, and the iteration converges cubically
+ * to simple roots. The roots are finally polished by a few plain Newton steps.
+ * @author ssodelta
+ *
+ */
+final class Aberth {
+
+	private static final int MAX_ITERATIONS = 500,
+							 POLISH         = 3;
+
+	private static final double EPSILON = 1e-15;
+
+	private Aberth(){}
+
+	/**
+	 * @param c The coefficients of a polynomial of degree n = c.length-1, where c[i] belongs to x^i and c[n] != 0.
+	 * @return The n roots, as {re, im} pairs.
+	 */
+	static double[][] solve(double[] c){
+		int n = c.length-1;
+
+		double[] re = new double[n],
+				 im = new double[n],
+				 pd = new double[4];
+
+		//Start on a circle within the Cauchy bound, at an angle which avoids the real axis
+		double bound = 0;
+
+		for(int i=0; i<n; i++)
+			bound = Math.max(bound, Math.abs(c[i]/c[n]));
+
+		double radius = Math.min(1 + bound, 1e6) / 2;
+
+		for(int k=0; k<n; k++){
+			re[k] = radius * Math.cos(2*Math.PI*k/n + 0.4);
+			im[k] = radius * Math.sin(2*Math.PI*k/n + 0.4);
+		}
+
+		for(int it=0; it<MAX_ITERATIONS; it++){
+			boolean done = true;
+
+			for(int k=0; k<n; k++){
+				evaluate(c, re[k], im[k], pd);
+
+				//w = p/p'
+				double den = pd[2]*pd[2] + pd[3]*pd[3];
+
+				if(den == 0)
+					continue;
+
+				double wRe = (pd[0]*pd[2] + pd[1]*pd[3]) / den,
+					   wIm = (pd[1]*pd[2] - pd[0]*pd[3]) / den;
+
+				//s = sum of 1/(z_k - z_j) over j != k
+				double sRe = 0, sIm = 0;
+
+				for(int j=0; j<n; j++){
+					if(j == k)
+						continue;
+
+					double dRe = re[k]-re[j],
+						   dIm = im[k]-im[j],
+						   d2  = dRe*dRe + dIm*dIm;
+
+					sRe += dRe/d2;
+					sIm -= dIm/d2;
+				}
+
+				//The step w / (1 - w*s)
+				double qRe = 1 - (wRe*sRe - wIm*sIm),
+					   qIm =   - (wRe*sIm + wIm*sRe),
+					   q2  = qRe*qRe + qIm*qIm;
+
+				double stepRe = (wRe*qRe + wIm*qIm) / q2,
+					   stepIm = (wIm*qRe - wRe*qIm) / q2;
+
+				re[k] -= stepRe;
+				im[k] -= stepIm;
+
+				if(Math.hypot(stepRe, stepIm) > EPSILON * Math.max(1, Math.hypot(re[k], im[k])))
+					done = false;
+			}
+
+			if(done)
+				break;
+		}
+
+		double[][] roots = new double[n][];
+
+		for(int k=0; k<n; k++){
+			for(int i=0; i<POLISH; i++){
+				evaluate(c, re[k], im[k], pd);
+
+				double den = pd[2]*pd[2] + pd[3]*pd[3];
+
+				if(den == 0)
+					break;
+
+				re[k] -= (pd[0]*pd[2] + pd[1]*pd[3]) / den;
+				im[k] -= (pd[1]*pd[2] - pd[0]*pd[3]) / den;
+			}
+
+			roots[k] = new double[]{re[k], im[k]};
+		}
+
+		return roots;
+	}
+
+	/**
+	 * Evaluates the polynomial and its derivative at re + im*i by Horner's method,
+	 * and writes {Re p, Im p, Re p', Im p'} into 'out'.
+	 */
+	static void evaluate(double[] c, double re, double im, double[] out){
+		double pRe = c[c.length-1], pIm = 0,
+			   dRe = 0,             dIm = 0;
+
+		for(int i=c.length-2; i>=0; i--){
+			double t = dRe*re - dIm*im + pRe;
+			dIm      = dRe*im + dIm*re + pIm;
+			dRe      = t;
+
+			t   = pRe*re - pIm*im + c[i];
+			pIm = pRe*im + pIm*re;
+			pRe = t;
+		}
+
+		out[0] = pRe;
+		out[1] = pIm;
+		out[2] = dRe;
+		out[3] = dIm;
+	}
+}
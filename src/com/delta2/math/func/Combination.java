@@ -0,0 +1,34 @@
+package com.delta2.math.func;
+
+import com.delta2.math.Complex;
+
+/**
+ * A function made from two other functions, which is evaluated through the batch methods of its parts,
+ * so combining functions does not create any objects per point.
+ * @author ssodelta
+ *
+ */
+abstract class Combination implements Differentiable {
+
+	final Differentiable f, g;
+
+	Combination(Differentiable f, Differentiable g){
+		this.f = f;
+		this.g = g;
+	}
+
+	@Override
+	public Complex evaluate(Complex x){
+		double[] re = {x.getRe()},
+				 im = {x.getIm()};
+
+		evaluate(re, im, re, im, 1);
+
+		return new Complex(re[0], im[0]);
+	}
+
+	@Override
+	public String toString(){
+		return toLaTeX();
+	}
+}
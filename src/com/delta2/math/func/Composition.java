@@ -0,0 +1,51 @@
+package com.delta2.math.func;
+
+/**
+ * The function x -> f(g(x)).
+ * @author ssodelta
+ *
+ */
+final class Composition extends Combination {
+
+	Composition(Differentiable f, Differentiable g){
+		super(f, g);
+	}
+
+	@Override
+	public double evaluate(double x){
+		return f.evaluate(g.evaluate(x));
+	}
+
+	@Override
+	public void evaluate(double[] re, double[] im, double[] outRe, double[] outIm, int count){
+		g.evaluate(re, im, outRe, outIm, count);
+		f.evaluate(outRe, outIm, outRe, outIm, count);
+	}
+
+	@Override
+	public void evaluate(double[] re, double[] im, double[] fRe, double[] fIm, double[] dRe, double[] dIm, int count){
+		double[] fdRe = new double[count],
+				 fdIm = new double[count];
+
+		//g and g' first, then f and f' at g
+		g.evaluate(re, im, fRe, fIm, dRe, dIm, count);
+		f.evaluate(fRe, fIm, fRe, fIm, fdRe, fdIm, count);
+
+		//Chain rule: (f o g)' = f'(g) * g'
+		for(int j=0; j<count; j++){
+			double r = fdRe[j]*dRe[j] - fdIm[j]*dIm[j];
+			dIm[j]   = fdRe[j]*dIm[j] + fdIm[j]*dRe[j];
+			dRe[j]   = r;
+		}
+	}
+
+	@Override
+	public Differentiable derivative(){
+		return new Product(new Composition(f.derivative(), g), g.derivative());
+	}
+
+	@Override
+	public String toLaTeX(){
+		return "\\left(" + f.toLaTeX() + "\\right) \\circ \\left(" + g.toLaTeX() + "\\right)";
+	}
+}
@@ -4,4 +4,37 @@ public interface Differentiable extends Function {
 	
 	public Differentiable derivative();
 	
+	/**
+	 * Evaluates this function and its derivative at the points re[j] + im[j]*i for every j in [0; count),
+	 * writing the values into fRe and fIm, and the derivatives into dRe and dIm.
+	 * The output arrays must be distinct from each other, but fRe and fIm may be the input arrays.
+	 * By default the function and derivative() are evaluated one after the other, but implementations should override this
+	 * to compute both in a single pass.
+	 */
+	public default void evaluate(double[] re, double[] im, double[] fRe, double[] fIm, double[] dRe, double[] dIm, int count){
+		derivative().evaluate(re, im, dRe, dIm, count);
+		evaluate(re, im, fRe, fIm, count);
+	}
+	
+	/**
+	 * @return The function x -> this(inner(x)).
+	 */
+	public default Differentiable compose(Differentiable inner){
+		return new Composition(this, inner);
+	}
+	
+	/**
+	 * @return The function x -> this(x) + other(x).
+	 */
+	public default Differentiable plus(Differentiable other){
+		return new Sum(this, other);
+	}
+	
+	/**
+	 * @return The function x -> this(x) * other(x).
+	 */
+	public default Differentiable times(Differentiable other){
+		return new Product(this, other);
+	}
+	
 }
@@ -10,4 +10,18 @@ public interface Function {
 	
 	public String toLaTeX();
 	
+	/**
+	 * Evaluates this function at the points re[j] + im[j]*i for every j in [0; count), and writes the values into outRe and outIm.
+	 * The output arrays may be the input arrays.
+	 * By default evaluate(Complex) is called for every point, but implementations should override this to work on the arrays directly.
+	 */
+	public default void evaluate(double[] re, double[] im, double[] outRe, double[] outIm, int count){
+		for(int j=0; j<count; j++){
+			Complex y = evaluate(new Complex(re[j], im[j]));
+			
+			outRe[j] = y.getRe();
+			outIm[j] = y.getIm();
+		}
+	}
+	
 }
@@ -1,5 +1,7 @@
 package com.delta2.math.func;
 
+import java.util.Arrays;
+
 import com.delta2.math.Complex;
 
 public final class Polynomial implements Differentiable {
@@ -16,18 +18,164 @@ public final class Polynomial implements Differentiable {
 
 	@Override
 	public Complex evaluate(Complex x) {
-		Complex xx = Complex.ONE,
-				y  = Complex.ZERO;
+		double re = x.getRe(),
+			   im = x.getIm();
+		
+		double yRe = 0,
+			   yIm = 0;
 		
-		for(int i=0; i<coeffs.length; i++){
-			y.add(new Complex(xx).mult(coeffs[i]));
-			if(i!=coeffs.length-1)
-				xx.mult(x);
+		//Horner's method: y = y*x + c[i], from the highest coefficient down
+		for(int i=coeffs.length-1; i>=0; i--){
+			double t = yRe*re - yIm*im + coeffs[i];
+			yIm      = yRe*im + yIm*re;
+			yRe      = t;
 		}
 		
-		return y;
+		return new Complex(yRe, yIm);
+	}
+	
+	@Override
+	public void evaluate(double[] re, double[] im, double[] outRe, double[] outIm, int count) {
+		for(int j=0; j<count; j++){
+			double xRe = re[j],
+				   xIm = im[j];
+			
+			double yRe = 0,
+				   yIm = 0;
+			
+			for(int i=coeffs.length-1; i>=0; i--){
+				double t = yRe*xRe - yIm*xIm + coeffs[i];
+				yIm      = yRe*xIm + yIm*xRe;
+				yRe      = t;
+			}
+			
+			outRe[j] = yRe;
+			outIm[j] = yIm;
+		}
+	}
+	
+	/**
+	 * Evaluates this polynomial and its derivative together by a fused Horner pass: p = p*x + c[i] and d = d*x + p.
+	 */
+	@Override
+	public void evaluate(double[] re, double[] im, double[] fRe, double[] fIm, double[] dRe, double[] dIm, int count) {
+		for(int j=0; j<count; j++){
+			double xRe = re[j],
+				   xIm = im[j];
+			
+			double pRe = 0, pIm = 0,
+				   qRe = 0, qIm = 0;
+			
+			for(int i=coeffs.length-1; i>=0; i--){
+				double t = qRe*xRe - qIm*xIm + pRe;
+				qIm      = qRe*xIm + qIm*xRe + pIm;
+				qRe      = t;
+				
+				t   = pRe*xRe - pIm*xIm + coeffs[i];
+				pIm = pRe*xIm + pIm*xRe;
+				pRe = t;
+			}
+			
+			fRe[j] = pRe;
+			fIm[j] = pIm;
+			dRe[j] = qRe;
+			dIm[j] = qIm;
+		}
 	}
 	
+	/**
+	 * @return A copy of the coefficients, where the i'th coefficient belongs to x^i.
+	 */
+	public double[] getCoefficients(){
+		return coeffs.clone();
+	}
+	
+	/**
+	 * @return The degree of this polynomial, ignoring leading zero coefficients (0 for a constant polynomial).
+	 */
+	public int degree(){
+		int n = coeffs.length-1;
+		
+		while(n>0 && coeffs[n]==0)
+			n--;
+		
+		return Math.max(0, n);
+	}
+	
+	/**
+	 * Finds every complex root of this polynomial at once, by the Aberth-Ehrlich method.
+	 * @return The degree() roots, each as many times as its multiplicity (approximately).
+	 */
+	public Complex[] roots(){
+		int n = degree();
+		
+		if(n == 0)
+			return new Complex[0];
+		
+		double[][] roots = Aberth.solve(Arrays.copyOf(coeffs, n+1));
+		Complex[] out = new Complex[n];
+		
+		for(int i=0; i<n; i++)
+			out[i] = new Complex(roots[i][0], roots[i][1]);
+		
+		return out;
+	}
+	
+	/**
+	 * Returns a radius around a root within which Newton's method provably converges to it, by Smale's gamma theorem:
+	 * Newton's method converges (quadratically) to a simple root z from every point closer to z than (3-sqrt(7)) / (2*gamma),
+	 * where gamma = max over k>=2 of |p^(k)(z) / (k! p'(z))|^(1/(k-1)).
+	 * 
+	 * As 'root' is only an approximation, gamma is evaluated there and the radius is shrunk to account for the distance
+	 * to the actual root, which is at most 2|p/p'| when the approximation is within the reach of alpha theory.
+	 * @param root An approximation of a root, e.g. from roots().
+	 * @return The radius, or 0 if 'root' is a multiple root or not close enough to a root to tell.
+	 */
+	public double newtonRadius(Complex root){
+		int n = degree();
+		
+		if(n == 0)
+			return 0;
+		
+		//Taylor coefficients at the root, p^(k)(root) / k!, by repeated synthetic division
+		double[] re = Arrays.copyOf(coeffs, n+1),
+				 im = new double[n+1];
+		
+		double zRe = root.getRe(),
+			   zIm = root.getIm();
+		
+		for(int k=0; k<n; k++)
+		for(int i=n-1; i>=k; i--){
+			double t = re[i] + zRe*re[i+1] - zIm*im[i+1];
+			im[i]    = im[i] + zRe*im[i+1] + zIm*re[i+1];
+			re[i]    = t;
+		}
+		
+		double d = Math.hypot(re[1], im[1]);
+		
+		if(d == 0)
+			return 0;
+		
+		double gamma = 0;
+		
+		for(int k=2; k<=n; k++)
+			gamma = Math.max(gamma, Math.pow(Math.hypot(re[k], im[k]) / d, 1.0/(k-1)));
+		
+		if(gamma == 0)
+			return Double.POSITIVE_INFINITY;
+		
+		double beta = Math.hypot(re[0], im[0]) / d;
+		
+		//With alpha = beta*gamma below MAX_ALPHA, gamma at the actual root is at most gamma / GAMMA_SLACK
+		if(beta*gamma >= MAX_ALPHA)
+			return 0;
+		
+		return Math.max(0, GAMMA_SLACK * (3-Math.sqrt(7)) / (2*gamma) - 2*beta);
+	}
+	
+	private static final double MAX_ALPHA   = 0.01,
+								GAMMA_SLACK = 0.9;
+	
 	public static final Polynomial random(int len){
 		double[] coeffs = new double[len];
 		
@@ -39,27 +187,39 @@ public final class Polynomial implements Differentiable {
 
 	@Override
 	public double evaluate(double x) {
-		double xx = 1,
-				y = 0;
+		double y = 0;
 		
-		for(int i=0; i<coeffs.length; i++){
-			y+=coeffs[i]*xx;
-			if(i!=coeffs.length-1)
-				xx *= x;
-		}
+		for(int i=coeffs.length-1; i>=0; i--)
+			y = y*x + coeffs[i];
 		
 		return y;
 	}
 	
 	@Override
 	public String toLaTeX() {
-		// TODO Auto-generated method stub
-		return null;
+		StringBuilder sb = new StringBuilder();
+		
+		for(int i=coeffs.length-1; i>=0; i--){
+			if(coeffs[i] == 0)
+				continue;
+			
+			if(sb.length() > 0)
+				sb.append(coeffs[i] < 0 ? " - " : " + ");
+			else if(coeffs[i] < 0)
+				sb.append("-");
+			
+			sb.append(Math.abs(coeffs[i]));
+			
+			if(i > 0)
+				sb.append(i == 1 ? "x" : "x^{"+i+"}");
+		}
+		
+		return sb.length() == 0 ? "0" : sb.toString();
 	}
 
 	@Override
 	public Polynomial derivative() {
-		double[] newCoeffs = new double[coeffs.length-1];
+		double[] newCoeffs = new double[Math.max(0, coeffs.length-1)];
 		
 		for(int i=0; i<newCoeffs.length; i++)
 			newCoeffs[i] = coeffs[i+1] * (i+1);
@@ -0,0 +1,64 @@
+package com.delta2.math.func;
+
+/**
+ * The function x -> f(x) * g(x).
+ * @author ssodelta
+ *
+ */
+final class Product extends Combination {
+
+	Product(Differentiable f, Differentiable g){
+		super(f, g);
+	}
+
+	@Override
+	public double evaluate(double x){
+		return f.evaluate(x) * g.evaluate(x);
+	}
+
+	@Override
+	public void evaluate(double[] re, double[] im, double[] outRe, double[] outIm, int count){
+		double[] gRe = new double[count],
+				 gIm = new double[count];
+
+		//g first, as the output arrays may be the input arrays
+		g.evaluate(re, im, gRe, gIm, count);
+		f.evaluate(re, im, outRe, outIm, count);
+
+		for(int j=0; j<count; j++){
+			double r = outRe[j]*gRe[j] - outIm[j]*gIm[j];
+			outIm[j] = outRe[j]*gIm[j] + outIm[j]*gRe[j];
+			outRe[j] = r;
+		}
+	}
+
+	@Override
+	public void evaluate(double[] re, double[] im, double[] fRe, double[] fIm, double[] dRe, double[] dIm, int count){
+		double[] gRe  = new double[count], gIm  = new double[count],
+				 gdRe = new double[count], gdIm = new double[count];
+
+		g.evaluate(re, im, gRe, gIm, gdRe, gdIm, count);
+		f.evaluate(re, im, fRe, fIm, dRe, dIm, count);
+
+		for(int j=0; j<count; j++){
+			//(fg)' = f'g + fg'
+			double r = dRe[j]*gRe[j] - dIm[j]*gIm[j] + fRe[j]*gdRe[j] - fIm[j]*gdIm[j];
+			dIm[j]   = dRe[j]*gIm[j] + dIm[j]*gRe[j] + fRe[j]*gdIm[j] + fIm[j]*gdRe[j];
+			dRe[j]   = r;
+
+			r      = fRe[j]*gRe[j] - fIm[j]*gIm[j];
+			fIm[j] = fRe[j]*gIm[j] + fIm[j]*gRe[j];
+			fRe[j] = r;
+		}
+	}
+
+	@Override
+	public Differentiable derivative(){
+		return new Sum(new Product(f.derivative(), g), new Product(f, g.derivative()));
+	}
+
+	@Override
+	public String toLaTeX(){
+		return "\\left(" + f.toLaTeX() + "\\right) \\cdot \\left(" + g.toLaTeX() + "\\right)";
+	}
+}
@@ -0,0 +1,59 @@
+package com.delta2.math.func;
+
+/**
+ * The function x -> f(x) + g(x).
+ * @author ssodelta
+ *
+ */
+final class Sum extends Combination {
+
+	Sum(Differentiable f, Differentiable g){
+		super(f, g);
+	}
+
+	@Override
+	public double evaluate(double x){
+		return f.evaluate(x) + g.evaluate(x);
+	}
+
+	@Override
+	public void evaluate(double[] re, double[] im, double[] outRe, double[] outIm, int count){
+		double[] gRe = new double[count],
+				 gIm = new double[count];
+
+		//g first, as the output arrays may be the input arrays
+		g.evaluate(re, im, gRe, gIm, count);
+		f.evaluate(re, im, outRe, outIm, count);
+
+		for(int j=0; j<count; j++){
+			outRe[j] += gRe[j];
+			outIm[j] += gIm[j];
+		}
+	}
+
+	@Override
+	public void evaluate(double[] re, double[] im, double[] fRe, double[] fIm, double[] dRe, double[] dIm, int count){
+		double[] gRe  = new double[count], gIm  = new double[count],
+				 gdRe = new double[count], gdIm = new double[count];
+
+		g.evaluate(re, im, gRe, gIm, gdRe, gdIm, count);
+		f.evaluate(re, im, fRe, fIm, dRe, dIm, count);
+
+		for(int j=0; j<count; j++){
+			fRe[j] += gRe[j];
+			fIm[j] += gIm[j];
+			dRe[j] += gdRe[j];
+			dIm[j] += gdIm[j];
+		}
+	}
+
+	@Override
+	public Differentiable derivative(){
+		return new Sum(f.derivative(), g.derivative());
+	}
+
+	@Override
+	public String toLaTeX(){
+		return "\\left(" + f.toLaTeX() + "\\right) + \\left(" + g.toLaTeX() + "\\right)";
+	}
+}